@@ -0,0 +1,25 @@
+package redbluerandomizer.bench;
+
+import org.openjdk.jmh.Main;
+
+/**
+ * Runs the JMH benchmarks with the GC profiler, so every result has its allocation rate (gc.alloc.rate.norm)
+ * next to the throughput. Any other JMH arguments are passed through, e.g. a regex to pick benchmarks.
+ * 
+ * The benchmarks live in their own source folder so the application doesn't depend on JMH. To build them put
+ * jmh-core, jmh-generator-annprocess (and their jopt-simple and commons-math3 dependencies) next to
+ * lib/MersenneTwister.jar and compile src and bench together, the annotation processor generates the harness:
+ * 
+ *   javac -cp "lib/*" -d bench-bin $(find src bench -name "*.java")
+ *   java -cp "bench-bin:lib/*" redbluerandomizer.bench.BenchmarkRunner [RandomizeBenchmark]
+ */
+public class BenchmarkRunner {
+
+	public static void main(String[] args) throws Exception {
+		String[] jmhArgs = new String[args.length + 2];
+		jmhArgs[0] = "-prof";
+		jmhArgs[1] = "gc";
+		System.arraycopy(args, 0, jmhArgs, 2, args.length);
+		Main.main(jmhArgs);
+	}
+}
@@ -0,0 +1,380 @@
+package redbluerandomizer.bench;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import ec.util.MersenneTwister;
+
+import redbluerandomizer.RandomizerOptions;
+import redbluerandomizer.RedBlueRandomizer;
+import redbluerandomizer.RomView;
+import redbluerandomizer.Section;
+import redbluerandomizer.SlotIndex;
+import redbluerandomizer.SlotVisitor;
+import redbluerandomizer.rng.MersenneTwisterSource;
+import redbluerandomizer.rng.RandomBackend;
+
+/**
+ * Statistical checks of the random picks, run on a synthetic ROM over many seeds, with the throughput next to
+ * every result so a faster RNG or sampler can't quietly skew what ends up in the ROM:
+ *
+ *  - the species put in each section by randomize() against the weights the options ask for (chi-square),
+ *    with legendaries at full weight, at a tenth of the weight and left out
+ *  - the first slot across consecutive seeds, which catches seeds that aren't mixed well
+ *  - the 1-1 map: a permutation of the pokemon that leaves everything else alone, every pokemon equally likely
+ *    to end up in every place (chi-square), and with no legendaries none of them in the map but every other
+ *    pokemon still reachable
+ *  - the default backend against ec.util.MersenneTwister, which it has to match number for number so seeds
+ *    keep giving the ROMs they gave before there was a choice of RNG
+ *
+ * --rng runs the species and 1-1 checks with another backend.
+ * Exits with 1 if any check fails. Not a JMH benchmark, run it directly:
+ *
+ *   java -cp "bench-bin:lib/*" redbluerandomizer.bench.RandomQualityCheck [--runs 20000] [--maps 200000] [--seed 1] [--alpha 0.001] [--rng mt]
+ */
+public class RandomQualityCheck {
+
+	private final RedBlueRandomizer randomizer;
+	private final SlotIndex slots;
+	private final int[] indices;
+	//position of each pokemon in indices, -1 for bytes that aren't pokemon
+	private final int[] column = new int[256];
+	private final double alpha;
+	private final long firstSeed;
+	private final RandomBackend backend;
+	private int failures = 0;
+
+	public RandomQualityCheck(long firstSeed, double alpha, RandomBackend backend){
+		this.firstSeed = firstSeed;
+		this.alpha = alpha;
+		this.backend = backend;
+		randomizer = new RedBlueRandomizer(0);
+		randomizer.loadRom(SyntheticRom.create(1));
+		slots = randomizer.getSlotIndex();
+		indices = randomizer.indices;
+		Arrays.fill(column, -1);
+		for(int i=0; i<indices.length; i++){
+			column[indices[i]] = i;
+		}
+	}
+
+	/*******************************************/
+	// Species Distribution
+	/*******************************************/
+
+	//randomizes runs times and tests the species in every section against the expected weights
+	public void checkSpecies(int runs, String name, boolean noLegendaries, double legendaryWeight){
+		RandomizerOptions options = new RandomizerOptions();
+		options.parseFlag("--all");
+		options.noLegendaries = noLegendaries;
+		options.legendaryWeight = legendaryWeight;
+		options.rng = backend;
+		options.applyTo(randomizer);
+
+		long[][] counts = new long[Section.COUNT][indices.length];
+		long[] firstSlot = new long[indices.length];
+		long start = System.nanoTime();
+		for(int run=0; run<runs; run++){
+			randomizer.setSeed(firstSeed + run);
+			randomizer.randomize();
+			RomView rom = randomizer.getRomView();
+			for(int section=0; section<Section.COUNT; section++){
+				long[] sectionCounts = counts[section];
+				int end = slots.getSectionEnd(section);
+				for(int i=slots.getSectionStart(section); i<end; i++){
+					int c = column[rom.get(slots.getOffset(i)) & 0xFF];
+					if(c < 0){
+						fail(name + ": slot " + i + " isn't a pokemon");
+						return;
+					}
+					sectionCounts[c]++;
+				}
+			}
+			firstSlot[column[rom.get(slots.getOffset(0)) & 0xFF]]++;
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.println(String.format("%s: %d randomizations, %.0f/sec, %.1fM slots/sec", name, runs, runs / seconds,
+				runs * (double)slots.size() / seconds / 1e6));
+
+		double[] weights = new double[indices.length];
+		for(int i=0; i<indices.length; i++){
+			weights[i] = !randomizer.isLegendaryPokemon(indices[i]) ? 1.0 : noLegendaries ? 0.0 : legendaryWeight;
+		}
+		for(int section=0; section<Section.COUNT; section++){
+			chiSquare(name + " " + Section.getName(section), counts[section], weights);
+		}
+		chiSquare(name + " first slot by seed", firstSlot, weights);
+	}
+
+	/*******************************************/
+	// One-To-One Map
+	/*******************************************/
+
+	//builds maps times and checks each one is a permutation, then tests where each pokemon ends up
+	public void checkOneToOne(int maps, boolean noLegendaries){
+		String name = noLegendaries ? "1-1 map, no legendaries" : "1-1 map";
+		RandomizerOptions options = new RandomizerOptions();
+		options.parseFlag("--all");
+		options.oneToOne = true;
+		options.noLegendaries = noLegendaries;
+		options.rng = backend;
+		options.applyTo(randomizer);
+
+		int legendaries = 0;
+		for(int index: indices){
+			if(randomizer.isLegendaryPokemon(index)){
+				legendaries++;
+			}
+		}
+		//without legendaries their places go to random picks, so that many pokemon are in the map twice
+		int expectedDistinct = noLegendaries ? indices.length - legendaries : indices.length;
+
+		//counts of (from, to) over every non-legendary place, a legendary's place is a random pick on top
+		long[] placements = new long[indices.length * indices.length];
+		long[] seen = new long[indices.length];
+		int[] images = new int[indices.length];
+		int[] map = new int[256];
+		long start = System.nanoTime();
+		for(int run=0; run<maps; run++){
+			randomizer.setSeed(firstSeed + run);
+			buildMap(map);
+			int distinct = 0;
+			for(int i=0; i<indices.length; i++){
+				int to = column[map[indices[i]]];
+				if(to < 0){
+					fail(name + ": " + randomizer.names[i] + " maps to something that isn't a pokemon");
+					return;
+				}
+				if(noLegendaries && randomizer.isLegendaryPokemon(indices[to])){
+					fail(name + ": " + randomizer.names[i] + " maps to " + randomizer.names[to]);
+					return;
+				}
+				if(images[to] != run + 1){
+					images[to] = run + 1;
+					distinct++;
+				}
+				placements[i * indices.length + to]++;
+				seen[to]++;
+			}
+			if(distinct != expectedDistinct){
+				fail(name + ": seed " + (firstSeed + run) + " maps to " + distinct + " pokemon, expected " + expectedDistinct);
+				return;
+			}
+			for(int b=0; b<256; b++){
+				if(column[b] < 0 && map[b] != b){
+					fail(name + ": seed " + (firstSeed + run) + " changes byte " + b + " which isn't a pokemon");
+					return;
+				}
+			}
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.println(String.format("%s: %d maps, %.0f/sec, %d distinct pokemon in every map", name, maps,
+				maps / seconds, expectedDistinct));
+
+		//from a non-legendary every allowed pokemon is equally likely
+		double[] weights = new double[indices.length];
+		for(int i=0; i<indices.length; i++){
+			weights[i] = noLegendaries && randomizer.isLegendaryPokemon(indices[i]) ? 0.0 : 1.0;
+		}
+		long[] cells = new long[placements.length];
+		double[] cellWeights = new double[placements.length];
+		int count = 0;
+		for(int from=0; from<indices.length; from++){
+			if(noLegendaries && randomizer.isLegendaryPokemon(indices[from])){
+				continue;
+			}
+			for(int to=0; to<indices.length; to++){
+				cells[count] = placements[from * indices.length + to];
+				cellWeights[count] = weights[to];
+				count++;
+			}
+		}
+		chiSquare(name + " placements", Arrays.copyOf(cells, count), Arrays.copyOf(cellWeights, count));
+		if(noLegendaries){
+			//every allowed pokemon is the image of exactly one non-legendary in every map, only the random picks
+			//in the legendaries' places can make the targets uneven, so those picks are tested on their own
+			long[] backfill = new long[indices.length];
+			long picks = 0;
+			for(int to=0; to<indices.length; to++){
+				if(weights[to] == 0){
+					continue;
+				}
+				backfill[to] = seen[to] - maps;
+				if(backfill[to] < 0){
+					fail(name + ": " + randomizer.names[to] + " is in " + seen[to] + " of " + maps + " maps");
+					return;
+				}
+				picks += backfill[to];
+			}
+			if(picks != (long)legendaries * maps){
+				fail(name + ": " + picks + " picks in the legendaries' places, expected " + (long)legendaries * maps);
+				return;
+			}
+			chiSquare(name + " legendary backfill", backfill, weights);
+		}
+	}
+
+	//the swap map for the current seed, built the way randomize() builds it by a replay that visits no slots
+	private int[] buildMap(int[] map){
+		randomizer.replay(noSlots);
+		for(int b=0; b<256; b++){
+			map[b] = randomizer.getReplacement((byte)b) & 0xFF;
+		}
+		return map;
+	}
+
+	private static final SlotVisitor noSlots = new SlotVisitor() {
+		public boolean visitsSection(int section){
+			return false;
+		}
+		public boolean visitSlot(int section, int slot, int pokemon){
+			return true;
+		}
+	};
+
+	/*******************************************/
+	// Mersenne Twister
+	/*******************************************/
+
+	//draws the same mix of bounded ints, bulk fills and doubles from MersenneTwisterSource and
+	//ec.util.MersenneTwister for keys streams, every number has to be the same
+	public void checkMersenneTwister(int keys){
+		Random pick = new Random(firstSeed);
+		MersenneTwisterSource source = new MersenneTwisterSource();
+		int[] buffer = new int[256];
+		long draws = 0;
+		long start = System.nanoTime();
+		for(int run=0; run<keys; run++){
+			long seed = pick.nextLong();
+			int stream = pick.nextInt(8);
+			MersenneTwister reference = new MersenneTwister(new int[] {(int)seed, (int)(seed >>> 32), stream});
+			source.reseed(seed, stream);
+			for(int i=0; i<64; i++){
+				//small bounds like the randomizer's and any positive int, powers of 2 included
+				int bound = i % 4 == 3 ? 1 << pick.nextInt(31) : 1 + pick.nextInt(i % 2 == 0 ? 256 : Integer.MAX_VALUE);
+				int count = pick.nextInt(buffer.length);
+				source.fill(buffer, count, bound);
+				for(int k=0; k<count; k++){
+					if(buffer[k] != reference.nextInt(bound)){
+						fail("mt: key " + seed + "/" + stream + " fill(" + bound + ") differs from MersenneTwister");
+						return;
+					}
+				}
+				if(source.nextInt(bound) != reference.nextInt(bound) || source.nextDouble() != reference.nextDouble()){
+					fail("mt: key " + seed + "/" + stream + " differs from MersenneTwister");
+					return;
+				}
+				draws += count + 2;
+			}
+		}
+		System.out.println(String.format("mt: %d keys, %d numbers the same as MersenneTwister in %.1fs", keys, draws,
+				(System.nanoTime() - start) / 1e9));
+	}
+
+	/*******************************************/
+	// Statistics
+	/*******************************************/
+
+	//Pearson's chi-square of observed counts against weights, categories with a weight of 0 must be empty
+	private void chiSquare(String name, long[] observed, double[] weights){
+		long total = 0;
+		double weightTotal = 0;
+		for(int i=0; i<observed.length; i++){
+			total += observed[i];
+			weightTotal += weights[i];
+		}
+		double chiSquare = 0;
+		int categories = 0;
+		for(int i=0; i<observed.length; i++){
+			if(weights[i] == 0){
+				if(observed[i] != 0){
+					fail(name + ": " + observed[i] + " picks of a pokemon that shouldn't be picked");
+					return;
+				}
+				continue;
+			}
+			double expected = total * weights[i] / weightTotal;
+			double difference = observed[i] - expected;
+			chiSquare += difference * difference / expected;
+			categories++;
+		}
+		int degrees = categories - 1;
+		double p = upperTail(chiSquare, degrees);
+		String result = String.format("  %-48s chi2 %10.1f  df %5d  p %.4f", name, chiSquare, degrees, p);
+		if(p < alpha){
+			fail(result);
+		}
+		else{
+			System.out.println(result);
+		}
+	}
+
+	//P(X >= x) for chi-square with k degrees of freedom, Wilson-Hilferty's normal approximation
+	//which is plenty for the hundreds of degrees of freedom here
+	static double upperTail(double x, int k){
+		double a = 2.0 / (9.0 * k);
+		double z = (Math.cbrt(x / k) - (1 - a)) / Math.sqrt(a);
+		return 0.5 * erfc(z / Math.sqrt(2));
+	}
+
+	//complementary error function, Numerical Recipes' Chebyshev fit (error under 1.2e-7)
+	static double erfc(double x){
+		double z = Math.abs(x);
+		double t = 1 / (1 + 0.5 * z);
+		double r = t * Math.exp(-z * z - 1.26551223 + t * (1.00002368 + t * (0.37409196 + t * (0.09678418 +
+				t * (-0.18628806 + t * (0.27886807 + t * (-1.13520398 + t * (1.48851587 +
+				t * (-0.82215223 + t * 0.17087277)))))))));
+		return x >= 0 ? r : 2 - r;
+	}
+
+	private void fail(String message){
+		System.out.println("FAIL " + message);
+		failures++;
+	}
+
+	/*******************************************/
+	// Command Line
+	/*******************************************/
+
+	public static void main(String[] args){
+		int runs = 20000;
+		int maps = 200000;
+		long seed = 1;
+		double alpha = 0.001;
+		RandomBackend backend = RandomBackend.DEFAULT;
+		for(int i=0; i<args.length; i++){
+			if(args[i].equals("--runs") && i + 1 < args.length){
+				runs = Integer.parseInt(args[++i]);
+			}
+			else if(args[i].equals("--maps") && i + 1 < args.length){
+				maps = Integer.parseInt(args[++i]);
+			}
+			else if(args[i].equals("--seed") && i + 1 < args.length){
+				seed = Long.parseLong(args[++i]);
+			}
+			else if(args[i].equals("--alpha") && i + 1 < args.length){
+				alpha = Double.parseDouble(args[++i]);
+			}
+			else if(args[i].equals("--rng") && i + 1 < args.length){
+				backend = RandomBackend.forName(args[++i]);
+			}
+			else{
+				System.err.println("Usage: RandomQualityCheck [--runs 20000] [--maps 200000] [--seed 1] [--alpha 0.001] [--rng mt]");
+				System.exit(2);
+			}
+		}
+
+		RandomQualityCheck check = new RandomQualityCheck(seed, alpha, backend);
+		long start = System.nanoTime();
+		System.out.println("RNG " + backend);
+		check.checkMersenneTwister(1000);
+		check.checkSpecies(runs, "random", false, 1.0);
+		check.checkSpecies(runs, "random, legendary weight 0.1", false, 0.1);
+		check.checkSpecies(runs, "random, no legendaries", true, 1.0);
+		check.checkOneToOne(maps, false);
+		check.checkOneToOne(maps, true);
+		System.out.println(String.format("%s in %.1fs", check.failures == 0 ? "All checks passed" :
+				check.failures + " checks failed", (System.nanoTime() - start) / 1e9));
+		System.exit(check.failures == 0 ? 0 : 1);
+	}
+}
@@ -0,0 +1,67 @@
+package redbluerandomizer.bench;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import redbluerandomizer.RandomizerOptions;
+import redbluerandomizer.RedBlueRandomizer;
+import redbluerandomizer.RomView;
+import redbluerandomizer.rng.RandomBackend;
+
+//randomize() with every section on, in both modes, with and without legendaries, for each RNG backend
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RandomizeBenchmark {
+
+	@Param({"totallyRandom", "oneToOne"})
+	public String mode;
+
+	@Param({"false", "true"})
+	public boolean noLegendaries;
+
+	@Param({"mt", "xoshiro", "L64X128MixRandom"})
+	public String rng;
+
+	private RedBlueRandomizer randomizer;
+	private long seed;
+
+	@Setup
+	public void setup(){
+		randomizer = new RedBlueRandomizer(0);
+		randomizer.loadRom(SyntheticRom.create(1));
+		RandomizerOptions options = new RandomizerOptions();
+		options.parseFlag("--all");
+		options.oneToOne = mode.equals("oneToOne");
+		options.noLegendaries = noLegendaries;
+		options.rng = RandomBackend.forName(rng);
+		options.applyTo(randomizer);
+	}
+
+	@Benchmark
+	public RomView randomize(){
+		randomizer.setSeed(seed++);
+		randomizer.randomize();
+		return randomizer.getRomView();
+	}
+
+	@Benchmark
+	public Map<Integer, Integer> getOneToOneMap(){
+		return randomizer.getOneToOneMap();
+	}
+}
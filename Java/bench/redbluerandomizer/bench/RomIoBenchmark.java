@@ -0,0 +1,63 @@
+package redbluerandomizer.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import redbluerandomizer.RedBlueRandomizer;
+
+//readRom/saveRom against temp files, and the header check
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RomIoBenchmark {
+
+	private RedBlueRandomizer randomizer;
+	private File input;
+	private File output;
+
+	@Setup
+	public void setup() throws IOException {
+		input = SyntheticRom.createFile(1);
+		output = File.createTempFile("randomized", ".gb");
+		randomizer = new RedBlueRandomizer(0);
+		randomizer.readRom(input.getPath());
+	}
+
+	@TearDown
+	public void tearDown(){
+		input.delete();
+		output.delete();
+	}
+
+	@Benchmark
+	public byte[] readRom() throws IOException {
+		randomizer.readRom(input.getPath());
+		return randomizer.getBaseRom();
+	}
+
+	@Benchmark
+	public void saveRom() throws IOException {
+		randomizer.saveRom(output.getPath());
+	}
+
+	@Benchmark
+	public boolean isPokemonRedBlue(){
+		return randomizer.isPokemonRedBlue();
+	}
+}
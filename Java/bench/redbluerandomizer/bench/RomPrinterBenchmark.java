@@ -0,0 +1,59 @@
+package redbluerandomizer.bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import redbluerandomizer.RedBlueRandomizer;
+import redbluerandomizer.RomPrinter;
+
+//RomPrinter.printROM() with System.out swapped for a stream that discards everything
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RomPrinterBenchmark {
+
+	private RomPrinter printer;
+	private PrintStream systemOut;
+
+	@Setup
+	public void setup(){
+		RedBlueRandomizer randomizer = new RedBlueRandomizer(0);
+		randomizer.loadRom(SyntheticRom.create(1));
+		printer = new RomPrinter(randomizer);
+		systemOut = System.out;
+		System.setOut(new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b){
+			}
+			@Override
+			public void write(byte[] b, int off, int len){
+			}
+		}));
+	}
+
+	@TearDown
+	public void tearDown(){
+		System.setOut(systemOut);
+	}
+
+	@Benchmark
+	public void printROM(){
+		printer.printROM();
+	}
+}
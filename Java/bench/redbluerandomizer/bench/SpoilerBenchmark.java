@@ -0,0 +1,67 @@
+package redbluerandomizer.bench;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import redbluerandomizer.RedBlueRandomizer;
+import redbluerandomizer.RomView;
+import redbluerandomizer.SlotIndex;
+import redbluerandomizer.spoiler.SpoilerWriter;
+
+//SpoilerWriter in each format into a channel that discards everything
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpoilerBenchmark {
+
+	@Param({"csv", "jsonl", "bin"})
+	public String format;
+
+	private SpoilerWriter writer;
+	private RomView rom;
+	private SlotIndex slots;
+	private WritableByteChannel discard;
+
+	@Setup
+	public void setup(){
+		RedBlueRandomizer randomizer = new RedBlueRandomizer(0);
+		randomizer.loadRom(SyntheticRom.create(1));
+		rom = randomizer.getRomView();
+		slots = randomizer.getSlotIndex();
+		writer = new SpoilerWriter(randomizer, SpoilerWriter.parseFormat(format));
+		discard = new WritableByteChannel() {
+			public int write(ByteBuffer src){
+				int length = src.remaining();
+				src.position(src.limit());
+				return length;
+			}
+			public boolean isOpen(){
+				return true;
+			}
+			public void close(){
+			}
+		};
+	}
+
+	@Benchmark
+	public void write() throws IOException {
+		writer.write(rom, slots, 1, discard);
+	}
+}
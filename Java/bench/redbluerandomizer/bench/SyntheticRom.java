@@ -0,0 +1,109 @@
+package redbluerandomizer.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import redbluerandomizer.RedBlueRandomizer;
+import redbluerandomizer.io.RomFile;
+
+//builds a fake 1MB Red/Blue image with valid slots at every offset the randomizer touches,
+//so the benchmarks and checks never need a real (copyrighted) ROM
+public class SyntheticRom {
+
+	public static final int size = 0x100000;
+
+	private SyntheticRom(){
+	}
+
+	//the same seed always gives the same image
+	public static byte[] create(long seed){
+		RedBlueRandomizer layout = new RedBlueRandomizer(0);
+		Random rand = new Random(seed);
+		byte[] rom = new byte[size];
+		rand.nextBytes(rom);
+
+		//header
+		byte[] name = layout.redRomName.getBytes();
+		for(int i=layout.romNameStart; i<layout.romNameEnd; i++){
+			int c = i - layout.romNameStart;
+			rom[i] = c < name.length ? name[c] : 0;
+		}
+
+		//title screen and starters
+		for(int offset: layout.titleScreenPokemon){
+			rom[offset] = randomPokemon(layout, rand);
+		}
+		for(int offset: layout.playerStarters){
+			rom[offset] = randomPokemon(layout, rand);
+		}
+
+		//wild areas
+		for(int offset: layout.areaOffsets){
+			for(int j = 0; j < 20; j+=2){
+				rom[offset + j] = randomLevel(rand);
+				rom[offset + j + 1] = randomPokemon(layout, rand);
+			}
+		}
+
+		//trainers, a mix of regular and special parties that ends on a terminator
+		int offset = layout.trainerPokemonStart;
+		while(offset < layout.trainerPokemonEnd){
+			rom[offset] = 0;
+			if(rand.nextInt(10) < 7){
+				int count = 1 + rand.nextInt(5);
+				rom[offset + 1] = randomLevel(rand);
+				for(int i=0; i<count; i++){
+					rom[offset + 2 + i] = randomPokemon(layout, rand);
+				}
+				offset += 2 + count;
+			}
+			else{
+				int count = 1 + rand.nextInt(6);
+				rom[offset + 1] = (byte)0xFF;
+				for(int i=0; i<count; i++){
+					rom[offset + 2 + i * 2] = randomLevel(rand);
+					rom[offset + 3 + i * 2] = randomPokemon(layout, rand);
+				}
+				offset += 2 + count * 2;
+			}
+		}
+		rom[offset] = 0;
+
+		writeChecksums(rom);
+		return rom;
+	}
+
+	//writes the image to a temp file that's removed when the JVM exits
+	public static File createFile(long seed) throws IOException {
+		File file = File.createTempFile("synthetic", ".gb");
+		file.deleteOnExit();
+		RomFile.write(file, create(seed));
+		return file;
+	}
+
+	private static byte randomPokemon(RedBlueRandomizer layout, Random rand){
+		return (byte)layout.indices[rand.nextInt(layout.indices.length)];
+	}
+
+	private static byte randomLevel(Random rand){
+		return (byte)(2 + rand.nextInt(59));
+	}
+
+	//header checksum at 0x14D and global checksum at 0x14E-0x14F, as a real cartridge has them
+	private static void writeChecksums(byte[] rom){
+		int header = 0;
+		for(int i=0x134; i<0x14D; i++){
+			header = header - (rom[i] & 0xFF) - 1;
+		}
+		rom[0x14D] = (byte)header;
+		int global = 0;
+		for(int i=0; i<rom.length; i++){
+			if(i != 0x14E && i != 0x14F){
+				global += rom[i] & 0xFF;
+			}
+		}
+		rom[0x14E] = (byte)(global >> 8);
+		rom[0x14F] = (byte)global;
+	}
+}
@@ -0,0 +1,113 @@
+package redbluerandomizer;
+
+import redbluerandomizer.rng.RandomSource;
+
+//Walker/Vose alias table: picks from a weighted list in constant time with at most two draws,
+//and a single draw when every weight is equal
+public class AliasTable {
+
+	private final int[] values;
+	private final double[] probability;
+	private final int[] alias;
+	//every column is whole, a pick is one bounded int
+	private final boolean uniform;
+
+	//values with a weight of 0 are left out of the table entirely
+	public AliasTable(int[] values, double[] weights){
+		int count = 0;
+		double total = 0;
+		for(int i=0; i<values.length; i++){
+			if(weights[i] < 0 || Double.isNaN(weights[i]) || Double.isInfinite(weights[i])){
+				throw new IllegalArgumentException("Bad weight " + weights[i] + " for index " + values[i]);
+			}
+			if(weights[i] > 0){
+				count++;
+				total += weights[i];
+			}
+		}
+		if(count == 0){
+			throw new IllegalArgumentException("Every weight is 0, there's nothing to pick");
+		}
+
+		this.values = new int[count];
+		this.probability = new double[count];
+		this.alias = new int[count];
+		int column = 0;
+		for(int i=0; i<values.length; i++){
+			if(weights[i] > 0){
+				this.values[column] = values[i];
+				this.probability[column] = weights[i] * count / total;
+				column++;
+			}
+		}
+
+		//pair each under-full column with an over-full one until every column sums to 1
+		int[] small = new int[count];
+		int[] large = new int[count];
+		int smallSize = 0;
+		int largeSize = 0;
+		for(int i=0; i<count; i++){
+			alias[i] = i;
+			if(probability[i] < 1.0){
+				small[smallSize++] = i;
+			}
+			else{
+				large[largeSize++] = i;
+			}
+		}
+		while(smallSize > 0 && largeSize > 0){
+			int less = small[--smallSize];
+			int more = large[--largeSize];
+			alias[less] = more;
+			probability[more] = (probability[more] + probability[less]) - 1.0;
+			if(probability[more] < 1.0){
+				small[smallSize++] = more;
+			}
+			else{
+				large[largeSize++] = more;
+			}
+		}
+		//whatever is left over is 1 up to rounding
+		while(largeSize > 0){
+			probability[large[--largeSize]] = 1.0;
+		}
+		while(smallSize > 0){
+			probability[small[--smallSize]] = 1.0;
+		}
+		boolean whole = true;
+		for(int i=0; i<count; i++){
+			whole &= probability[i] >= 1.0;
+		}
+		uniform = whole;
+	}
+
+	//picks a value
+	public int sample(RandomSource rand){
+		int column = rand.nextInt(values.length);
+		double p = probability[column];
+		if(p >= 1.0 || rand.nextDouble() < p){
+			return values[column];
+		}
+		return values[alias[column]];
+	}
+
+	//makes count picks into a buffer, the same picks as calling sample count times. with even weights
+	//they're drawn with one bulk fill, otherwise a pick's second draw depends on its first
+	public void sample(RandomSource rand, int[] picks, int count){
+		if(uniform){
+			rand.fill(picks, count, values.length);
+			for(int i=0; i<count; i++){
+				picks[i] = values[picks[i]];
+			}
+			return;
+		}
+		for(int i=0; i<count; i++){
+			picks[i] = sample(rand);
+		}
+	}
+
+	//number of values that can be picked
+	public int size(){
+		return values.length;
+	}
+}
@@ -0,0 +1,55 @@
+package redbluerandomizer;
+
+//the cartridge header checksum (0x14D) and the 16 bit big endian global checksum (0x14E-0x14F)
+public class Checksum {
+
+	public static final int headerStart = 0x134;
+	public static final int headerEnd = 0x14C;
+	public static final int headerChecksumOffset = 0x14D;
+	public static final int globalChecksumOffset = 0x14E;
+
+	private Checksum(){
+	}
+
+	//header checksum over the title through the version number
+	public static int computeHeaderChecksum(byte[] rom){
+		int checksum = 0;
+		for(int i=headerStart; i<=headerEnd; i++){
+			checksum = checksum - (rom[i] & 0xFF) - 1;
+		}
+		return checksum & 0xFF;
+	}
+
+	//header checksum of a randomized view
+	public static int computeHeaderChecksum(RomView rom){
+		int checksum = 0;
+		for(int i=headerStart; i<=headerEnd; i++){
+			checksum = checksum - (rom.get(i) & 0xFF) - 1;
+		}
+		return checksum & 0xFF;
+	}
+
+	//sum of every byte except the global checksum itself, this reads the whole ROM
+	public static int computeGlobalChecksum(byte[] rom){
+		int sum = 0;
+		for(int i=0; i<rom.length; i++){
+			sum += rom[i] & 0xFF;
+		}
+		sum -= rom[globalChecksumOffset] & 0xFF;
+		sum -= rom[globalChecksumOffset + 1] & 0xFF;
+		return sum & 0xFFFF;
+	}
+
+	public static int readHeaderChecksum(byte[] rom){
+		return rom[headerChecksumOffset] & 0xFF;
+	}
+
+	public static int readGlobalChecksum(byte[] rom){
+		return ((rom[globalChecksumOffset] & 0xFF) << 8) | (rom[globalChecksumOffset + 1] & 0xFF);
+	}
+
+	//true for the three checksum bytes
+	public static boolean isChecksumOffset(int offset){
+		return offset >= headerChecksumOffset && offset <= globalChecksumOffset + 1;
+	}
+}
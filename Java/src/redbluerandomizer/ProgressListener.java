@@ -0,0 +1,8 @@
+package redbluerandomizer;
+
+//told as each section of a randomization starts, so long running callers can show progress or stop early
+public interface ProgressListener {
+
+	//called before a section (one of the Section constants) is randomized, returning false cancels the randomization
+	boolean sectionStarted(int section);
+}
@@ -0,0 +1,103 @@
+package redbluerandomizer;
+
+import redbluerandomizer.rng.RandomBackend;
+
+public class RandomizerOptions {
+
+	public boolean titleScreen   = false;
+	public boolean playerStarters = false;
+	public boolean wildAreas     = false;
+	public boolean trainers      = false;
+	public boolean oneToOne      = false;
+	public boolean noLegendaries = false;
+	public double legendaryWeight = 1.0;
+	public RandomBackend rng      = RandomBackend.DEFAULT;
+
+	/*******************************************/
+	// Command Line
+	/*******************************************/
+
+	//applies a command line flag, returns false if the flag isn't an option
+	public boolean parseFlag(String flag){
+		if(flag.equals("--title")){
+			titleScreen = true;
+		}
+		else if(flag.equals("--starters")){
+			playerStarters = true;
+		}
+		else if(flag.equals("--wild")){
+			wildAreas = true;
+		}
+		else if(flag.equals("--trainers")){
+			trainers = true;
+		}
+		else if(flag.equals("--all")){
+			titleScreen = true;
+			playerStarters = true;
+			wildAreas = true;
+			trainers = true;
+		}
+		else if(flag.equals("--one-to-one")){
+			oneToOne = true;
+		}
+		else if(flag.equals("--no-legendaries")){
+			noLegendaries = true;
+		}
+		else if(flag.startsWith("--legendary-weight=")){
+			legendaryWeight = Double.parseDouble(flag.substring("--legendary-weight=".length()));
+		}
+		else if(flag.startsWith("--rng=")){
+			rng = RandomBackend.forName(flag.substring("--rng=".length()));
+		}
+		else{
+			return false;
+		}
+		return true;
+	}
+
+	//usage text for the flags understood by parseFlag
+	public static String getUsage(){
+		return "  --title            randomize the title screen pokemon\n" +
+		       "  --starters         randomize the player's starters\n" +
+		       "  --wild             randomize the wild pokemon areas\n" +
+		       "  --trainers         randomize the trainer pokemon\n" +
+		       "  --all              all of the above\n" +
+		       "  --one-to-one       use a 1-1 replacement instead of totally random\n" +
+		       "  --no-legendaries   keep legendaries out of the randomized slots\n" +
+		       "  --legendary-weight=w\n" +
+		       "                     how likely a legendary is compared to other pokemon (default 1)\n" +
+		       "  --rng=name         the random number generator the seed is used with (default " + RandomBackend.DEFAULT + "),\n" +
+		       "                     " + RandomBackend.getNames() + "\n";
+	}
+
+	/*******************************************/
+	// Misc.
+	/*******************************************/
+
+	//copies the options onto a randomizer
+	public void applyTo(RedBlueRandomizer randomizer){
+		randomizer.setTitleScreenToggle(titleScreen);
+		randomizer.setPlayerStartersToggle(playerStarters);
+		randomizer.setwildAreasToggle(wildAreas);
+		randomizer.setTrainersToggle(trainers);
+		randomizer.setOneToOneToggle(oneToOne);
+		randomizer.setNoLegendariesToggle(noLegendaries);
+		randomizer.setLegendaryWeight(legendaryWeight);
+		randomizer.setRandomBackend(rng);
+	}
+
+	@Override
+	public String toString(){
+		StringBuilder builder = new StringBuilder();
+		if(titleScreen)    builder.append(" --title");
+		if(playerStarters) builder.append(" --starters");
+		if(wildAreas)      builder.append(" --wild");
+		if(trainers)       builder.append(" --trainers");
+		if(oneToOne)       builder.append(" --one-to-one");
+		if(noLegendaries)  builder.append(" --no-legendaries");
+		if(legendaryWeight != 1.0) builder.append(" --legendary-weight=").append(legendaryWeight);
+		//the default is left out so keys and logs from before there was a choice still match
+		if(!rng.getName().equals(RandomBackend.DEFAULT.getName())) builder.append(" --rng=").append(rng);
+		return builder.toString().trim();
+	}
+}
@@ -1,24 +1,35 @@
 package redbluerandomizer;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.Random;
 
-import ec.util.MersenneTwister;
+import redbluerandomizer.io.RomFile;
+import redbluerandomizer.io.RomHeader;
+import redbluerandomizer.metrics.PhaseEvent;
+import redbluerandomizer.metrics.RandomizerMetrics;
+import redbluerandomizer.metrics.RomIoEvent;
+import redbluerandomizer.patch.IpsWriter;
+import redbluerandomizer.rng.RandomBackend;
+import redbluerandomizer.rng.RandomSource;
 
 public class RedBlueRandomizer {	
 		
-	private Map<Integer, Integer> swapMap;
-	private Random rand = new MersenneTwister(new Date().getTime());
-	private byte[] rom;
+	private final byte[] swapMap = new byte[256];
+	private final long[] legendarySet = new long[4];
+	private final int[] shuffledIndices;
+	private SectionStreams streams;
+	private SlotIndex slots;
+	private AliasTable pokemonSampler;
+	//a section's random picks, drawn all at once
+	private int[] picks = new int[0];
+	private int loadedChecksum = -1;
+	private RomView rom;
 	
 	//constants
 	public final String redRomName = "POKEMON RED";
@@ -82,182 +93,257 @@ public class RedBlueRandomizer {
 	private boolean trainersToggle       = false;
 	private boolean oneToOneToggle       = false;
 	private boolean noLegendariesToggle  = false;	
+	private double legendaryWeight       = 1.0;
+	private double[] speciesWeights      = null;
+
+	//creates a randomizer seeded from the current time
+	public RedBlueRandomizer(){
+		this(new Date().getTime());
+	}
+	
+	//creates a randomizer with its own RNG streams seeded with the given seed
+	public RedBlueRandomizer(long seed){
+		streams = new SectionStreams(seed);
+		shuffledIndices = new int[indices.length];
+		for(int legendaryIndex: legendaryIndices){
+			legendarySet[legendaryIndex >>> 6] |= 1L << legendaryIndex;
+		}
+	}
 
 	/*******************************************/
 	// Randomize
 	/*******************************************/
 	
-	//performs the randomization (duh...)
+	//performs the randomization (duh...), the same seed and options always give the same ROM
 	public void randomize(){
-		//setup
-		swapMap = getOneToOneMap();
+		randomize(null);
+	}
+	
+	//randomizes while telling the listener about each section, returns false (with the ROM back to how
+	//it was loaded) if the listener cancelled it
+	public boolean randomize(ProgressListener listener){
+		//setup, undoing the last randomization so we always start from the loaded ROM
+		long draws = streams.getDraws();
+		rom.clear();
+		getSlotIndex();
+		if(loadedChecksum < 0 && rom.length() > Checksum.globalChecksumOffset + 1){
+			loadedChecksum = Checksum.computeGlobalChecksum(rom.getBase());
+		}
+		if(oneToOneToggle){
+			buildOneToOneMap(streams.rewind(SectionStreams.ONE_TO_ONE_MAP));
+		}
 		
-		int offset;
-		//intro pokemon
-		if(titleScreenToggle){
-			for(int i=0; i<titleScreenPokemon.length; i++){
-				offset = titleScreenPokemon[i];
-				if(oneToOneToggle){
-					rom[offset] = getReplacement(rom[offset]);
-				}
-				else{
-					rom[offset] = getRandomPokemonIndex();
-				}
-			}			
-		}
-		//player starters
-		if(playerStartersToggle){
-			for(int i=0; i<playerStarters.length; i++){
-				offset = playerStarters[i];
-				if(oneToOneToggle){					
-					rom[offset] = getReplacement(rom[offset]);
-				}
-				else{
-					rom[offset] = getRandomPokemonIndex();
+		//each section draws from its own stream, so the sections don't depend on each other
+		for(int section=0; section<Section.COUNT; section++){
+			if(isSectionEnabled(section)){
+				if(listener != null && !listener.sectionStarted(section)){
+					rom.clear();
+					return false;
 				}
+				randomizeSection(section);
+			}
+		}
+		updateChecksums();
+		RandomizerMetrics.get().recordRandomization(streams.getDraws() - draws);
+		return true;
+	}
+	
+	//works out what randomize() would put in each slot the visitor wants, making the same draws from the same
+	//streams but only reading the loaded ROM, returns false if the visitor stopped early
+	public boolean replay(SlotVisitor visitor){
+		byte[] base = rom.getBase();
+		getSlotIndex();
+		if(oneToOneToggle){
+			buildOneToOneMap(streams.rewind(SectionStreams.ONE_TO_ONE_MAP));
+		}
+		for(int section=0; section<Section.COUNT; section++){
+			if(!visitor.visitsSection(section)){
+				continue;
 			}
-		}		
-		//wild pokemon areas
-		if(wildAreasToggle){
-			for(int i=0; i<areaOffsets.length; i++){				
-				for(int j = 0; j < 20; j+=2){
-					offset = areaOffsets[i];
-					if(oneToOneToggle){
-						rom[offset + j + 1] = getReplacement(rom[offset + j + 1]);
-					}
-					else{
-						rom[offset + j + 1] = getRandomPokemonIndex();
-					}
+			boolean enabled = isSectionEnabled(section);
+			RandomSource rand = enabled && !oneToOneToggle ? streams.rewind(section) : null;
+			int end = slots.getSectionEnd(section);
+			for(int i=slots.getSectionStart(section); i<end; i++){
+				byte value = base[slots.getOffset(i)];
+				if(enabled){
+					value = oneToOneToggle ? getReplacement(value) : getRandomPokemonIndex(rand);
 				}
-			}			
-		}		
-		//pokemon trainers
-		if(trainersToggle){
-			int i = trainerPokemonStart;
-			while(i < trainerPokemonEnd){
-				if(byteToInt(rom[i]) == 0x0 && byteToInt(rom[i+1]) != 0xFF){
-					i = randomizeRegularTrainer(i);
+				if(!visitor.visitSlot(section, i, byteToInt(value))){
+					return false;
 				}
-				else{
-					i = randomizeSpecialTrainer(i);
-				}			
-			}			
-		}			
+			}
+		}
+		return true;
 	}
 	
 	/*******************************************/
 	// Randomize Support Methods
 	/*******************************************/
 	
-	//randomizes a regular trainer
-	private int randomizeRegularTrainer(int offset){
-		offset+=2;
-		boolean loop = true;
-		while(loop){		
-			if(rom[offset] == 0x0){
-				loop = false;
-				break;									
-			}
-			else{
-				if(oneToOneToggle){
-					rom[offset] = getReplacement(rom[offset]);
-				}
-				else{
-					rom[offset] = getRandomPokemonIndex();
-				}
-				offset++;
+	//whether a section's toggle is on
+	public boolean isSectionEnabled(int section){
+		switch(section){
+			case Section.TITLE_SCREEN:    return titleScreenToggle;
+			case Section.PLAYER_STARTERS: return playerStartersToggle;
+			case Section.WILD_AREAS:      return wildAreasToggle;
+			case Section.TRAINERS:        return trainersToggle;
+			default:                      return false;
+		}
+	}
+	
+	//fixes the header and global checksums, the global one is updated from the written bytes
+	//so only the first randomize after a load adds up the whole ROM
+	private void updateChecksums(){
+		if(rom.length() <= Checksum.globalChecksumOffset + 1){
+			return;
+		}
+		setByte(Checksum.headerChecksumOffset, (byte)Checksum.computeHeaderChecksum(rom));
+		int checksum = (loadedChecksum + getChangeSum()) & 0xFFFF;
+		setByte(Checksum.globalChecksumOffset, (byte)(checksum >> 8));
+		setByte(Checksum.globalChecksumOffset + 1, (byte)checksum);
+	}
+	
+	//how much the written bytes moved the global checksum
+	private int getChangeSum(){
+		byte[] base = rom.getBase();
+		int sum = 0;
+		for(int i=0; i<rom.getWrittenCount(); i++){
+			int offset = rom.getWrittenOffset(i);
+			if(offset != Checksum.globalChecksumOffset && offset != Checksum.globalChecksumOffset + 1){
+				sum += (rom.getWrittenValue(i) & 0xFF) - (base[offset] & 0xFF);
 			}
 		}
-		return offset;
+		return sum;
+	}
+	
+	//writes a byte if it changes
+	private void setByte(int offset, byte value){
+		if(rom.get(offset) != value){
+			rom.set(offset, value);
+		}
 	}
 	
-	//randomizer a special trainer
-	private int randomizeSpecialTrainer(int offset){	
-		offset += 2;
-		boolean loop = true;
-		while(loop){		
-			if(rom[offset] == 0x0){
-				loop = false;
-				break;									
+	//randomizes every slot of a section using the slot index, timing it for the metrics
+	private void randomizeSection(int section){
+		//only made while JFR is recording them, so randomizing allocates nothing the rest of the time
+		PhaseEvent event = PhaseEvent.isRecording() ? new PhaseEvent() : null;
+		if(event != null){
+			event.begin();
+		}
+		long start = System.nanoTime();
+		long draws = streams.getDraws();
+		int changed = rom.getWrittenCount();
+		
+		int end = slots.getSectionEnd(section);
+		if(oneToOneToggle){
+			for(int i=slots.getSectionStart(section); i<end; i++){
+				replaceSlot(slots.getOffset(i));
 			}
-			else{
-				if(oneToOneToggle){
-					rom[offset + 1] = getReplacement(rom[offset + 1]);
-				}
-				else{
-					rom[offset + 1] = getRandomPokemonIndex();
-				}
-				offset+=2;
+		}
+		else{
+			int first = slots.getSectionStart(section);
+			int count = end - first;
+			if(picks.length < count){
+				picks = new int[count];
+			}
+			getPokemonSampler().sample(streams.rewind(section), picks, count);
+			for(int i=0; i<count; i++){
+				setSlot(slots.getOffset(first + i), (byte)picks[i]);
 			}
 		}
-		return offset;
+		
+		RandomizerMetrics.get().recordPhase(section, System.nanoTime() - start, rom.getWrittenCount() - changed);
+		if(event != null && event.shouldCommit()){
+			event.phase = Section.getName(section);
+			event.seed = streams.getSeed();
+			event.slotsRewritten = rom.getWrittenCount() - changed;
+			event.rngDraws = streams.getDraws() - draws;
+			event.commit();
+		}
 	}
 	
-	//returns a random pokemon index
-	private byte getRandomPokemonIndex(){
-		shuffle();		
-		if(noLegendariesToggle){
-			int randomIndex;
-			int randomPokemon;
-			while(true){
-				randomIndex = rand.nextInt(indices.length);
-				randomPokemon = indices[randomIndex];
-				if(!isLegendaryPokemon(randomPokemon)){
-					return (byte)randomPokemon;
-				}
-			}		
+	//swaps a single pokemon slot through the 1-1 map
+	private void replaceSlot(int offset){
+		byte oldValue = rom.get(offset);
+		byte newValue = swapMap[oldValue & 0xFF];
+		if(newValue != oldValue){
+			rom.set(offset, newValue);
 		}
-		else{
-			int randomIndex = rand.nextInt(indices.length);	
-			return (byte)indices[randomIndex];
-		}	
-	}	
+	}
+	
+	//puts a random pick in a single pokemon slot
+	private void setSlot(int offset, byte newValue){
+		if(newValue != rom.get(offset)){
+			rom.set(offset, newValue);
+		}
+	}
 	
-	//progresses the RNG a random number of times to add to the randomness
-	private void shuffle(){
-		int loop = rand.nextInt(10);		
-		for(int i=0; i<loop; i++){
-			rand.nextInt(indices.length);
+	//returns a random pokemon index, a constant time pick from the alias table for the current options
+	private byte getRandomPokemonIndex(RandomSource rand){
+		return (byte)getPokemonSampler().sample(rand);
+	}
+	
+	//the alias table of pokemon that can be picked and their weights, rebuilt when the options change
+	public AliasTable getPokemonSampler(){
+		if(pokemonSampler == null){
+			double[] weights = new double[indices.length];
+			for(int i=0; i<indices.length; i++){
+				weights[i] = speciesWeights != null ? speciesWeights[i] : 1.0;
+				if(isLegendaryPokemon(indices[i])){
+					weights[i] *= noLegendariesToggle ? 0.0 : legendaryWeight;
+				}
+			}
+			pokemonSampler = new AliasTable(indices, weights);
 		}
+		return pokemonSampler;
 	}
 	
 	/*******************************************/
 	// Lookup Methods
 	/*******************************************/	
 	
-	//creates a one-to-one randomization of the pokemon list
+	//creates a one-to-one randomization of the pokemon list from the map's own stream
 	public HashMap<Integer, Integer> getOneToOneMap(){
+		buildOneToOneMap(streams.get(SectionStreams.ONE_TO_ONE_MAP));
 		HashMap<Integer, Integer> map = new HashMap<Integer, Integer>();
-		List<Integer> temp = getPokemonIndexes();
+		for(int oldIndex: indices){
+			map.put(oldIndex, byteToInt(swapMap[oldIndex]));
+		}
+		return map;
+	}
+	
+	//fills the swap table with a one-to-one randomization, shuffling the pokemon list in place (Fisher-Yates)
+	private void buildOneToOneMap(RandomSource rand){
+		for(int i=0; i<swapMap.length; i++){
+			swapMap[i] = (byte)i;
+		}
+		System.arraycopy(indices, 0, shuffledIndices, 0, indices.length);
 		if(noLegendariesToggle){
-			for(Integer legendaryIndex: legendaryIndices){
-				int i = temp.indexOf(legendaryIndex);				
-				temp.set(i, byteToInt(getRandomPokemonIndex()));				
+			for(int i=0; i<shuffledIndices.length; i++){
+				if(isLegendaryPokemon(shuffledIndices[i])){
+					shuffledIndices[i] = byteToInt(getRandomPokemonIndex(rand));
+				}
 			}
 		}
-		
-		Integer newIndex;
-		for(Integer oldIndex: indices){
-			newIndex = temp.get(rand.nextInt(temp.size()));
-			map.put(oldIndex, newIndex);
-			temp.remove(newIndex);
-		}		
-		return map;
+		for(int i=shuffledIndices.length-1; i>0; i--){
+			int j = rand.nextInt(i + 1);
+			int temp = shuffledIndices[i];
+			shuffledIndices[i] = shuffledIndices[j];
+			shuffledIndices[j] = temp;
+		}
+		for(int i=0; i<indices.length; i++){
+			swapMap[indices[i]] = (byte)shuffledIndices[i];
+		}
 	}
 	
-	//gets the replacement for a pokemon using the swap map generated	
+	//gets the replacement for a pokemon using the swap map generated, anything that isn't a pokemon is left alone
 	public byte getReplacement(byte oldIndex){
-		return (byte)swapMap.get(byteToInt(oldIndex)).intValue();
+		return swapMap[byteToInt(oldIndex)];
 	}	
 	
 	//determines if a given pokemon index belongs to a legendary
 	public boolean isLegendaryPokemon(int index){
-		for(int legendaryIndex: legendaryIndices){
-			if(index == legendaryIndex){
-				return true;
-			}
-		}
-		return false;
+		return index >= 0 && index < 256 && (legendarySet[index >>> 6] & (1L << index)) != 0;
 	}
 	
 	//returns a list of all the pokemon's indexes
@@ -283,47 +369,84 @@ public class RedBlueRandomizer {
 	/*******************************************/	
 	
 	//reads in the ROM given a filepath
-	public void readRom(String filePath){
-		try {
-			FileInputStream stream = new FileInputStream(filePath);
-			rom = new byte[stream.available()];
-			stream.read(rom, 0, stream.available());
-	        stream.close();	  
-		} catch (FileNotFoundException e) {			
-			e.printStackTrace();
-		} catch (IOException e) {
-			e.printStackTrace();
-		}			
-	}
-	
-	//saves the ROM to a specified filepath
-	public void saveRom(String filePath) {
-		try {
-	    	FileOutputStream stream = new FileOutputStream(new File(filePath));
-	    	stream.write(rom);
-	    	stream.close();	      
-	    } 
-	    catch (IOException e) {
-	    	e.printStackTrace();
-	    }
-	}
-	
-	//checks the ROM's name
-	public boolean isPokemonRedBlue(){
+	public void readRom(String filePath) throws IOException {
+		RomIoEvent event = new RomIoEvent();
+		event.begin();
+		byte[] baseRom = RomFile.read(new File(filePath));
+		recordIo(event, filePath, false, baseRom.length);
+		loadRom(baseRom);
+	}
+	
+	//loads an already read ROM as the base, it's shared rather than copied (randomizing only writes to this
+	//randomizer's view of it) so any number of randomizers can load the same array, as long as nothing changes it
+	public void loadRom(byte[] baseRom){
+		if(rom != null && rom.getBase() == baseRom){
+			rom.clear();
+		}
+		else{
+			rom = new RomView(baseRom);
+		}
+		slots = null;
+		loadedChecksum = -1;
+	}
+	
+	//saves the ROM to a specified filepath, the base and the randomized bytes are streamed out together
+	public void saveRom(String filePath) throws IOException {
+		RomIoEvent event = new RomIoEvent();
+		event.begin();
+		RomFile.write(new File(filePath), rom.toDiff(), rom.getBase());
+		recordIo(event, filePath, true, rom.length());
+	}
+	
+	//saves the ROM by copying the file it was loaded from and writing just the randomized bytes
+	public void saveRom(String filePath, File baseRomFile) throws IOException {
+		RomIoEvent event = new RomIoEvent();
+		event.begin();
+		RomFile.write(new File(filePath), baseRomFile, rom.toDiff());
+		recordIo(event, filePath, true, rom.length());
+	}
+	
+	//saves the last randomization as an IPS patch against the loaded ROM
+	public void savePatch(String filePath) throws IOException {
+		RomIoEvent event = new RomIoEvent();
+		event.begin();
+		OutputStream stream = new BufferedOutputStream(new FileOutputStream(filePath));
 		try{
-			String romName = "";
-			for(int i=romNameStart; i<romNameEnd; i++){
-				romName += (char)byteToInt(rom[i]);
-			}
-			romName = romName.trim();		
-			if(romName.equals(redRomName) || romName.equals(blueRomName)){
-				return true;
-			}
-			return false;
+			IpsWriter.write(stream, rom.toDiff(), rom.getBase());
+		}
+		finally{
+			stream.close();
+		}
+		recordIo(event, filePath, true, new File(filePath).length());
+	}
+	
+	//adds a read or write to the metrics and the JFR recording
+	private static void recordIo(RomIoEvent event, String filePath, boolean write, long bytes){
+		if(write){
+			RandomizerMetrics.get().recordWrite(bytes);
+		}
+		else{
+			RandomizerMetrics.get().recordRead(bytes);
+		}
+		if(event.shouldCommit()){
+			event.path = filePath;
+			event.write = write;
+			event.bytes = bytes;
+			event.commit();
 		}
-		catch(ArrayIndexOutOfBoundsException e){
+	}
+	
+	//checks the ROM's name, RomHeader.probe does the same check on a file without reading all of it
+	public boolean isPokemonRedBlue(){
+		if(rom.length() < RomHeader.size){
 			return false;
 		}
+		byte[] header = new byte[RomHeader.size];
+		for(int i=romNameStart; i<romNameEnd; i++){
+			header[i] = rom.get(i);
+		}
+		String romName = RomHeader.readTitle(header);
+		return romName.equals(redRomName) || romName.equals(blueRomName);
 	}
 	
 	/*******************************************/
@@ -357,9 +480,72 @@ public class RedBlueRandomizer {
 	}
 	public void setNoLegendariesToggle(boolean toggle){
 		this.noLegendariesToggle = toggle;
+		this.pokemonSampler = null;
 	}
 	
-	public byte[] getRom(){
+	//how likely each legendary is compared to a regular pokemon in totally random mode (1 = just as likely)
+	public void setLegendaryWeight(double weight){
+		this.legendaryWeight = weight;
+		this.pokemonSampler = null;
+	}
+	//per pokemon weights in the same order as indices, null for an even spread
+	public void setSpeciesWeights(double[] weights){
+		if(weights != null && weights.length != indices.length){
+			throw new IllegalArgumentException("Expected " + indices.length + " weights, got " + weights.length);
+		}
+		this.speciesWeights = weights == null ? null : weights.clone();
+		this.pokemonSampler = null;
+	}
+	
+	public void setSeed(long seed){
+		streams.setSeed(seed);
+	}
+	public long getSeed(){
+		return streams.getSeed();
+	}
+	//which RNG the seed is used with, a seed only gives the same ROM again with the same backend
+	public void setRandomBackend(RandomBackend backend){
+		if(!backend.getName().equals(streams.getBackend().getName())){
+			streams = new SectionStreams(streams.getSeed(), backend);
+		}
+	}
+	public RandomBackend getRandomBackend(){
+		return streams.getBackend();
+	}
+	
+	//where each section's slots are, built from the offset tables above
+	public SectionLayout[] getSectionLayouts(){
+		return new SectionLayout[] {
+			SectionLayout.offsetList(Section.TITLE_SCREEN, titleScreenPokemon),
+			SectionLayout.offsetList(Section.PLAYER_STARTERS, playerStarters),
+			//wild areas are 10 level/pokemon pairs
+			SectionLayout.recordTable(Section.WILD_AREAS, areaOffsets, 10, 2, 1, 0),
+			SectionLayout.partyList(Section.TRAINERS, trainerPokemonStart, trainerPokemonEnd)
+		};
+	}
+	
+	//shares an index built for the same base ROM, call after loading the ROM
+	public void setSlotIndex(SlotIndex slots){
+		this.slots = slots;
+	}
+	//the slot index for the loaded ROM, built on first use
+	public SlotIndex getSlotIndex(){
+		if(slots == null){
+			slots = SlotIndex.build(this, rom.getBase());
+		}
+		return slots;
+	}
+	
+	//the randomized ROM as a view over the loaded base, it changes with every randomize
+	public RomView getRomView(){
 		return rom;
 	}
+	//the loaded ROM, shared and never changed by randomizing
+	public byte[] getBaseRom(){
+		return rom.getBase();
+	}
+	//a copy of the whole randomized ROM, getRomView avoids the copy
+	public byte[] getRom(){
+		return rom.toByteArray();
+	}
 }
@@ -4,14 +4,14 @@ import java.util.Map;
 
 public class RomPrinter {
 	
-	private byte[] rom;
+	private RomView rom;
 	private Map<Integer, String> pokemonNameMap;
 	
 	private RedBlueRandomizer r;
 	
 	public RomPrinter(RedBlueRandomizer randomizer){
 		this.r = randomizer;
-		this.rom = r.getRom();
+		this.rom = r.getRomView();
 		pokemonNameMap = r.getPokemonNameMap();
 	}
 	
@@ -26,14 +26,14 @@ public class RomPrinter {
 		System.out.println("\nTitle Screen Pokemon**********************************\n");
 		for(int i=0; i<r.titleScreenPokemon.length; i++){
 			offset = r.titleScreenPokemon[i];
-			printPokemon(offset, rom[offset]);
+			printPokemon(offset, rom.get(offset));
 		}			
 		
 		//player starters
 		System.out.println("\nPlayer Starter ***************************************\n");
 		for(int i=0; i<r.playerStarters.length; i++){
 			offset = r.playerStarters[i];
-			printPokemon(offset, rom[offset]);			
+			printPokemon(offset, rom.get(offset));			
 		}
 				
 		//wild pokemon areas
@@ -42,7 +42,7 @@ public class RomPrinter {
 			System.out.println("\nWild Pokemon Area " + i + "\t" + intToHexStr(r.areaOffsets[i]) + "\n");			
 			for(int j = 0; j < 20; j+=2){
 				offset = r.areaOffsets[i];
-				printPokemon((offset+j+1), rom[offset + j], rom[offset + j + 1]);
+				printPokemon((offset+j+1), rom.get(offset + j), rom.get(offset + j + 1));
 			}
 		}
 		
@@ -51,7 +51,7 @@ public class RomPrinter {
 		int a = r.trainerPokemonStart;
 		while(a < r.trainerPokemonEnd){
 			System.out.println("\nOffset:" + intToHexStr(a));
-			if(byteToInt(rom[a]) == 0x0 && byteToInt(rom[a+1]) != 0xFF){
+			if(byteToInt(rom.get(a)) == 0x0 && byteToInt(rom.get(a+1)) != 0xFF){
 				a = printRegularTrainer(a);
 			}
 			else{
@@ -85,16 +85,16 @@ public class RomPrinter {
 	//prints a regular trainer
 	private int printRegularTrainer(int offset){	
 		offset++;
-		System.out.println("Level: " + this.byteToInt(rom[offset]));
+		System.out.println("Level: " + this.byteToInt(rom.get(offset)));
 		offset++;
 		boolean loop = true;
 		while(loop){		
-			if(rom[offset] == 0x0){
+			if(rom.get(offset) == 0x0){
 				loop = false;
 				break;									
 			}
 			else{
-				printPokemon(offset, rom[offset]);
+				printPokemon(offset, rom.get(offset));
 				offset++;
 			}
 		}
@@ -106,12 +106,12 @@ public class RomPrinter {
 		offset += 2;
 		boolean loop = true;
 		while(loop){		
-			if(rom[offset] == 0x0){
+			if(rom.get(offset) == 0x0){
 				loop = false;
 				break;									
 			}
 			else{
-				printPokemon(offset+1, byteToInt(rom[offset]), rom[offset+1]);
+				printPokemon(offset+1, byteToInt(rom.get(offset)), rom.get(offset+1));
 				offset+=2;
 			}
 		}
@@ -0,0 +1,95 @@
+package redbluerandomizer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import redbluerandomizer.io.RomHeader;
+
+//a known build of the game: how to recognise it (header fields and the CRC-32 of a clean dump) and where its
+//pokemon slots are. only the US builds are registered, other revisions and regional builds move the tables
+//around and can be added with register() once their offsets are known
+public class RomProfile {
+
+	public final String name;
+	public final String title;
+	public final int version;
+	public final int destination;
+	//CRC-32 of the whole clean ROM, -1 if it isn't known
+	public final long crc32;
+
+	//where the pokemon slots are, see SectionLayout
+	private final SectionLayout[] layouts;
+
+	private static final List<RomProfile> profiles = new ArrayList<RomProfile>();
+
+	static{
+		//Red and Blue share one layout, the randomizer's tables are the US one
+		RedBlueRandomizer us = new RedBlueRandomizer(0);
+		register(new RomProfile("Pokemon Red (US)", us.redRomName, 0, 1, 0x9F7FDD53L, us));
+		register(new RomProfile("Pokemon Blue (US)", us.blueRomName, 0, 1, 0xD6DA8A1AL, us));
+	}
+
+	//a profile that takes its layouts from a randomizer's offset tables
+	public RomProfile(String name, String title, int version, int destination, long crc32, RedBlueRandomizer layout){
+		this(name, title, version, destination, crc32, layout.getSectionLayouts());
+	}
+
+	public RomProfile(String name, String title, int version, int destination, long crc32, SectionLayout[] layouts){
+		this.name = name;
+		this.title = title;
+		this.version = version;
+		this.destination = destination;
+		this.crc32 = crc32;
+		this.layouts = layouts.clone();
+	}
+
+	/*******************************************/
+	// Registry
+	/*******************************************/
+
+	public static synchronized void register(RomProfile profile){
+		profiles.add(profile);
+	}
+
+	public static synchronized List<RomProfile> getProfiles(){
+		return Collections.unmodifiableList(new ArrayList<RomProfile>(profiles));
+	}
+
+	//the first profile whose header fields match, the CRC isn't checked so a hacked or bad dump still matches
+	public static synchronized RomProfile identify(RomHeader header){
+		for(RomProfile profile: profiles){
+			if(profile.matches(header)){
+				return profile;
+			}
+		}
+		return null;
+	}
+
+	//the profile for an exact clean dump, null if the CRC doesn't match any of them
+	public static synchronized RomProfile identify(RomHeader header, long crc32){
+		for(RomProfile profile: profiles){
+			if(profile.crc32 == crc32 && profile.matches(header)){
+				return profile;
+			}
+		}
+		return null;
+	}
+
+	/*******************************************/
+	// Misc.
+	/*******************************************/
+
+	public SectionLayout[] getLayouts(){
+		return layouts.clone();
+	}
+
+	public boolean matches(RomHeader header){
+		return title.equals(header.title) && version == header.version && destination == header.destination;
+	}
+
+	@Override
+	public String toString(){
+		return name;
+	}
+}
@@ -0,0 +1,197 @@
+package redbluerandomizer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import redbluerandomizer.patch.RomDiff;
+
+//a ROM as a shared base image that's never written plus the bytes written over it (copy-on-write).
+//any number of variants can share one base, each only costs its written offsets: an open addressing
+//table from offset to value, and the table positions in write order so the writes can be walked and undone.
+//a view isn't thread safe, but views over the same base can be used from different threads
+public class RomView {
+
+	private static final int empty = -1;
+
+	private final byte[] base;
+	private int[] keys;
+	private byte[] values;
+	private int[] positions;
+	private int size = 0;
+	private int mask;
+	private int shift;
+
+	//the base is shared, not copied, so it must not be changed while the view is in use
+	public RomView(byte[] base){
+		this(base, 64);
+	}
+
+	private RomView(byte[] base, int capacity){
+		this.base = base;
+		allocate(capacity);
+	}
+
+	/*******************************************/
+	// Read/Write
+	/*******************************************/
+
+	public byte get(int offset){
+		int i = slot(offset);
+		int key;
+		while((key = keys[i]) != empty){
+			if(key == offset){
+				return values[i];
+			}
+			i = (i + 1) & mask;
+		}
+		return base[offset];
+	}
+
+	public void set(int offset, byte value){
+		if(offset < 0 || offset >= base.length){
+			throw new ArrayIndexOutOfBoundsException(offset);
+		}
+		int i = slot(offset);
+		int key;
+		while((key = keys[i]) != empty){
+			if(key == offset){
+				values[i] = value;
+				return;
+			}
+			i = (i + 1) & mask;
+		}
+		keys[i] = offset;
+		values[i] = value;
+		positions[size++] = i;
+		//kept at most half full so probes stay short
+		if(size * 2 > keys.length){
+			grow();
+		}
+	}
+
+	//drops every write, back to the base
+	public void clear(){
+		for(int i=0; i<size; i++){
+			keys[positions[i]] = empty;
+		}
+		size = 0;
+	}
+
+	/*******************************************/
+	// Written Bytes
+	/*******************************************/
+
+	//number of offsets written since the last clear
+	public int getWrittenCount(){
+		return size;
+	}
+	//the i-th offset written, in write order
+	public int getWrittenOffset(int i){
+		return keys[positions[i]];
+	}
+	//the current value at the i-th offset written
+	public byte getWrittenValue(int i){
+		return values[positions[i]];
+	}
+
+	//the written bytes that differ from the base, in offset order
+	public RomDiff toDiff(){
+		long[] pairs = new long[size];
+		int count = 0;
+		for(int i=0; i<size; i++){
+			int position = positions[i];
+			if(values[position] != base[keys[position]]){
+				pairs[count++] = ((long)keys[position] << 8) | (values[position] & 0xFF);
+			}
+		}
+		Arrays.sort(pairs, 0, count);
+		int[] offsets = new int[count];
+		byte[] diffValues = new byte[count];
+		for(int i=0; i<count; i++){
+			offsets[i] = (int)(pairs[i] >>> 8);
+			diffValues[i] = (byte)pairs[i];
+		}
+		return new RomDiff(offsets, diffValues);
+	}
+
+	//a view of the same base with a copy of the current writes, sized to fit them
+	public RomView snapshot(){
+		int capacity = 16;
+		while(capacity < size * 2 + 2){
+			capacity *= 2;
+		}
+		RomView copy = new RomView(base, capacity);
+		for(int i=0; i<size; i++){
+			copy.set(keys[positions[i]], values[positions[i]]);
+		}
+		return copy;
+	}
+
+	/*******************************************/
+	// Output
+	/*******************************************/
+
+	//copies the whole ROM into a buffer of at least length() bytes
+	public void copyTo(byte[] rom){
+		System.arraycopy(base, 0, rom, 0, base.length);
+		for(int i=0; i<size; i++){
+			rom[keys[positions[i]]] = values[positions[i]];
+		}
+	}
+
+	//the whole ROM as a new array
+	public byte[] toByteArray(){
+		byte[] rom = new byte[base.length];
+		copyTo(rom);
+		return rom;
+	}
+
+	//streams the whole ROM, base and writes together, without building it in memory
+	public void writeTo(OutputStream out) throws IOException {
+		toDiff().writeRom(out, base);
+	}
+
+	/*******************************************/
+	// Setters/Getters
+	/*******************************************/
+
+	public int length(){
+		return base.length;
+	}
+	//the shared base, never written through the view
+	public byte[] getBase(){
+		return base;
+	}
+
+	/*******************************************/
+	// Table
+	/*******************************************/
+
+	private int slot(int offset){
+		//fibonacci hashing, the top bits of the product are the well mixed ones
+		return (offset * 0x9E3779B9) >>> shift;
+	}
+
+	private void allocate(int capacity){
+		keys = new int[capacity];
+		Arrays.fill(keys, empty);
+		values = new byte[capacity];
+		positions = new int[capacity / 2 + 1];
+		mask = capacity - 1;
+		shift = Integer.numberOfLeadingZeros(capacity) + 1;
+	}
+
+	private void grow(){
+		int[] oldKeys = keys;
+		byte[] oldValues = values;
+		int[] oldPositions = positions;
+		int count = size;
+		allocate(keys.length * 2);
+		size = 0;
+		//reinserting in write order keeps the write order
+		for(int i=0; i<count; i++){
+			set(oldKeys[oldPositions[i]], oldValues[oldPositions[i]]);
+		}
+	}
+}
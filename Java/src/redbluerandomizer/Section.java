@@ -0,0 +1,21 @@
+package redbluerandomizer;
+
+//the randomizable regions of the ROM, each one draws from its own RNG stream
+public final class Section {
+
+	public static final int TITLE_SCREEN    = 0;
+	public static final int PLAYER_STARTERS = 1;
+	public static final int WILD_AREAS      = 2;
+	public static final int TRAINERS        = 3;
+	public static final int COUNT           = 4;
+
+	public static final String[] names = {"title", "starter", "wild", "trainer"};
+
+	private Section(){
+	}
+
+	//returns a section's short name
+	public static String getName(int section){
+		return names[section];
+	}
+}
@@ -0,0 +1,155 @@
+package redbluerandomizer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import redbluerandomizer.io.RomHash;
+
+//describes where a section's pokemon slots are in the ROM as data, SlotIndex compiles a list of these into
+//its flat slot arrays once per ROM so randomizing is the same loop for every section. a section can have any
+//number of layouts, so a new region of an existing section is just another layout in the profile
+public class SectionLayout {
+
+	//kinds of layout
+	//a flat list of pokemon bytes
+	public static final int OFFSET_LIST = 0;
+	//fixed size records at each of a list of table offsets
+	public static final int RECORD_TABLE = 1;
+	//terminated party records, read from the ROM while compiling
+	public static final int PARTY_LIST = 2;
+
+	public final int section;
+	public final int kind;
+	//OFFSET_LIST: the pokemon bytes, RECORD_TABLE: the start of each table
+	public final int[] offsets;
+	//RECORD_TABLE: records per table, bytes per record, and where the pokemon and level bytes are in a record
+	public final int count;
+	public final int stride;
+	public final int pokemonOffset;
+	public final int levelOffset;
+	//PARTY_LIST: the byte range holding the parties
+	public final int start;
+	public final int end;
+
+	private SectionLayout(int section, int kind, int[] offsets, int count, int stride, int pokemonOffset,
+			int levelOffset, int start, int end){
+		this.section = section;
+		this.kind = kind;
+		this.offsets = offsets;
+		this.count = count;
+		this.stride = stride;
+		this.pokemonOffset = pokemonOffset;
+		this.levelOffset = levelOffset;
+		this.start = start;
+		this.end = end;
+	}
+
+	//slots at each offset, without levels
+	public static SectionLayout offsetList(int section, int[] offsets){
+		return new SectionLayout(section, OFFSET_LIST, offsets.clone(), offsets.length, 1, 0, -1, 0, 0);
+	}
+
+	//count records of stride bytes at each table offset, each table is its own group.
+	//levelOffset is -1 if the records don't have a level
+	public static SectionLayout recordTable(int section, int[] tables, int count, int stride, int pokemonOffset, int levelOffset){
+		return new SectionLayout(section, RECORD_TABLE, tables.clone(), count, stride, pokemonOffset, levelOffset, 0, 0);
+	}
+
+	//trainer parties from start to end, each one is its own group. a party starting with 0x00 (the end of the
+	//previous one) and a level is a level and 0 terminated pokemon, otherwise it's 0 terminated level/pokemon pairs
+	public static SectionLayout partyList(int section, int start, int end){
+		return new SectionLayout(section, PARTY_LIST, new int[0], 0, 0, 1, 0, start, end);
+	}
+
+	/*******************************************/
+	// Compile
+	/*******************************************/
+
+	//calls the sink for every slot in this layout, in ROM order
+	void compile(byte[] rom, SlotSink sink){
+		switch(kind){
+			case OFFSET_LIST:
+				for(int i=0; i<offsets.length; i++){
+					sink.add(offsets[i], -1, 0);
+				}
+				break;
+			case RECORD_TABLE:
+				for(int i=0; i<offsets.length; i++){
+					for(int j=0; j<count; j++){
+						int record = offsets[i] + j * stride;
+						sink.add(record + pokemonOffset, levelOffset < 0 ? -1 : record + levelOffset, i);
+					}
+				}
+				break;
+			case PARTY_LIST:
+				int party = 0;
+				int offset = start;
+				while(offset < end){
+					if((rom[offset] & 0xFF) == 0x0 && (rom[offset+1] & 0xFF) != 0xFF){
+						int level = offset + 1;
+						offset += 2;
+						while(rom[offset] != 0x0){
+							sink.add(offset, level, party);
+							offset++;
+						}
+					}
+					else{
+						offset += 2;
+						while(rom[offset] != 0x0){
+							sink.add(offset + 1, offset, party);
+							offset += 2;
+						}
+					}
+					party++;
+				}
+				break;
+			default:
+				throw new IllegalStateException("Unknown layout kind " + kind);
+		}
+	}
+
+	//a hash of everything in the layouts, so anything compiled from them can be cached by ROM and layout.
+	//changing an offset table or a profile gives a different hash
+	public static String hash(SectionLayout[] layouts){
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try{
+			out.writeInt(layouts.length);
+			for(SectionLayout layout: layouts){
+				out.writeInt(layout.section);
+				out.writeInt(layout.kind);
+				out.writeInt(layout.offsets.length);
+				for(int offset: layout.offsets){
+					out.writeInt(offset);
+				}
+				out.writeInt(layout.count);
+				out.writeInt(layout.stride);
+				out.writeInt(layout.pokemonOffset);
+				out.writeInt(layout.levelOffset);
+				out.writeInt(layout.start);
+				out.writeInt(layout.end);
+			}
+			out.flush();
+		}
+		catch(IOException e){
+			//a ByteArrayOutputStream doesn't throw
+			throw new IllegalStateException(e);
+		}
+		return RomHash.sha1(bytes.toByteArray());
+	}
+
+	//receives the slots a layout compiles to
+	interface SlotSink {
+		void add(int offset, int levelOffset, int group);
+	}
+
+	@Override
+	public String toString(){
+		switch(kind){
+			case OFFSET_LIST:  return Section.getName(section) + ": " + offsets.length + " offsets";
+			case RECORD_TABLE: return Section.getName(section) + ": " + offsets.length + " tables of " + count + " records";
+			default:           return Section.getName(section) + ": parties " + Integer.toHexString(start) + "-" + Integer.toHexString(end);
+		}
+	}
+}
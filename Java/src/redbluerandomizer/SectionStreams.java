@@ -0,0 +1,63 @@
+package redbluerandomizer;
+
+import redbluerandomizer.rng.RandomBackend;
+import redbluerandomizer.rng.RandomSource;
+
+//one independent RNG stream per section plus one for the 1-1 map, all derived from a single seed
+public class SectionStreams {
+
+	public static final int ONE_TO_ONE_MAP = Section.COUNT;
+	public static final int COUNT = Section.COUNT + 1;
+
+	private final RandomBackend backend;
+	private final RandomSource[] streams = new RandomSource[COUNT];
+	private long seed;
+
+	public SectionStreams(long seed){
+		this(seed, RandomBackend.DEFAULT);
+	}
+
+	public SectionStreams(long seed, RandomBackend backend){
+		this.seed = seed;
+		this.backend = backend;
+		for(int i=0; i<COUNT; i++){
+			streams[i] = backend.create();
+			streams[i].reseed(seed, i);
+		}
+	}
+
+	//changes the seed, each stream is only reseeded when it's rewound
+	public void setSeed(long seed){
+		this.seed = seed;
+	}
+
+	public long getSeed(){
+		return seed;
+	}
+
+	public RandomBackend getBackend(){
+		return backend;
+	}
+
+	//rewinds a stream to the start of its sequence for the current seed and returns it.
+	//seed and stream id are both part of the stream's seed, so every stream starts from an unrelated state
+	//and never depends on another stream's draws
+	public RandomSource rewind(int stream){
+		streams[stream].reseed(seed, stream);
+		return streams[stream];
+	}
+
+	//returns the stream for a section (or ONE_TO_ONE_MAP) at its current position
+	public RandomSource get(int stream){
+		return streams[stream];
+	}
+
+	//numbers drawn from every stream so far, for metrics
+	public long getDraws(){
+		long draws = 0;
+		for(int i=0; i<COUNT; i++){
+			draws += streams[i].getDraws();
+		}
+		return draws;
+	}
+}
@@ -0,0 +1,277 @@
+package redbluerandomizer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import redbluerandomizer.io.RomHash;
+
+//every pokemon slot in a ROM, found once by walking the base ROM so randomizing is a flat loop.
+//slots are stored section by section (in Section order) in parallel primitive arrays.
+public class SlotIndex {
+
+	private static final int fileMagic = 0x52425349; //"RBSI"
+	//2 is the same format as 1, cache files are keyed by the layouts as well since then
+	private static final int fileVersion = 2;
+
+	private final int[] offsets;
+	private final int[] levelOffsets;
+	private final int[] groups;
+	private final int[] sectionStarts;
+
+	private SlotIndex(int[] offsets, int[] levelOffsets, int[] groups, int[] sectionStarts){
+		this.offsets = offsets;
+		this.levelOffsets = levelOffsets;
+		this.groups = groups;
+		this.sectionStarts = sectionStarts;
+	}
+
+	/*******************************************/
+	// Build
+	/*******************************************/
+
+	//walks the ROM using the randomizer's offset tables
+	public static SlotIndex build(RedBlueRandomizer r, byte[] rom){
+		return build(r.getSectionLayouts(), rom);
+	}
+
+	//walks the ROM using a profile's offset tables
+	public static SlotIndex build(RomProfile profile, byte[] rom){
+		return build(profile.getLayouts(), rom);
+	}
+
+	//compiles the layouts into one flat list of slots, grouped by section in Section order and
+	//in layout order within a section
+	public static SlotIndex build(SectionLayout[] layouts, byte[] rom){
+		Builder builder = new Builder();
+		for(int section=0; section<Section.COUNT; section++){
+			builder.startSection(section);
+			for(int i=0; i<layouts.length; i++){
+				if(layouts[i].section == section){
+					layouts[i].compile(rom, builder);
+				}
+			}
+		}
+		return builder.toSlotIndex();
+	}
+
+	//loads the index for a ROM from the cache directory, building and caching it when it isn't there
+	public static SlotIndex load(RedBlueRandomizer r, byte[] rom, File cacheDirectory){
+		return load(r.getSectionLayouts(), rom, cacheDirectory);
+	}
+
+	//the cache file is keyed by the ROM and the layouts, an index built from other offset tables is never picked up
+	public static SlotIndex load(SectionLayout[] layouts, byte[] rom, File cacheDirectory){
+		File cacheFile = new File(cacheDirectory, RomHash.sha1(rom) + "-" + SectionLayout.hash(layouts) + ".slots");
+		if(cacheFile.isFile()){
+			try{
+				SlotIndex cached = read(cacheFile);
+				//a file that reads fine can still be garbage, randomizing with it would write all over the ROM
+				if(cached.fitsIn(rom.length)){
+					return cached;
+				}
+			}
+			catch(IOException e){
+				//stale or damaged, rebuild it below
+			}
+		}
+		SlotIndex index = build(layouts, rom);
+		try{
+			if(cacheDirectory.isDirectory() || cacheDirectory.mkdirs()){
+				index.write(cacheFile);
+			}
+		}
+		catch(IOException e){
+			//the cache is only a shortcut, carry on without it
+		}
+		return index;
+	}
+
+	//default cache location, ~/.redbluerandomizer/slots
+	public static File getDefaultCacheDirectory(){
+		return new File(new File(System.getProperty("user.home"), ".redbluerandomizer"), "slots");
+	}
+
+	/*******************************************/
+	// File I/O
+	/*******************************************/
+
+	public void write(File file) throws IOException {
+		//write to a temp file first so a reader never sees half an index. every write has its own temp file,
+		//the cache directory is shared by every process and two that missed on the same ROM both write it
+		File temp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+		DataOutputStream out;
+		try{
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+		}
+		catch(IOException e){
+			temp.delete();
+			throw e;
+		}
+		try{
+			write(out);
+			out.close();
+		}
+		catch(IOException e){
+			//closing again after a failed close does nothing
+			out.close();
+			temp.delete();
+			throw e;
+		}
+		if(!temp.renameTo(file)){
+			//the other writer's index is the same as this one, replacing it loses nothing
+			file.delete();
+			if(!temp.renameTo(file)){
+				temp.delete();
+				throw new IOException("Could not write " + file);
+			}
+		}
+	}
+
+	public static SlotIndex read(File file) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try{
+			return read(in, file.getPath());
+		}
+		finally{
+			in.close();
+		}
+	}
+
+	//writes the index into a stream, for files that carry an index along with other data
+	public void write(DataOutputStream out) throws IOException {
+		out.writeInt(fileMagic);
+		out.writeInt(fileVersion);
+		out.writeInt(offsets.length);
+		writeInts(out, sectionStarts);
+		writeInts(out, offsets);
+		writeInts(out, levelOffsets);
+		writeInts(out, groups);
+	}
+
+	//reads an index written by write(DataOutputStream), source names it in errors
+	public static SlotIndex read(DataInputStream in, String source) throws IOException {
+		if(in.readInt() != fileMagic){
+			throw new IOException(source + " is not a slot index");
+		}
+		int version = in.readInt();
+		if(version != fileVersion && version != 1){
+			throw new IOException(source + " is not a slot index");
+		}
+		int count = in.readInt();
+		int[] sectionStarts = readInts(in, Section.COUNT + 1);
+		if(count < 0 || sectionStarts[Section.COUNT] != count){
+			throw new IOException(source + " is damaged");
+		}
+		return new SlotIndex(readInts(in, count), readInts(in, count), readInts(in, count), sectionStarts);
+	}
+
+	//whether the sections are in order and every offset is inside a ROM of romLength bytes
+	public boolean fitsIn(int romLength){
+		if(sectionStarts[0] != 0){
+			return false;
+		}
+		for(int section=0; section<Section.COUNT; section++){
+			if(sectionStarts[section] > sectionStarts[section + 1]){
+				return false;
+			}
+		}
+		for(int slot=0; slot<offsets.length; slot++){
+			if(offsets[slot] < 0 || offsets[slot] >= romLength || levelOffsets[slot] < -1 || levelOffsets[slot] >= romLength){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+		for(int i=0; i<values.length; i++){
+			out.writeInt(values[i]);
+		}
+	}
+
+	private static int[] readInts(DataInputStream in, int count) throws IOException {
+		int[] values = new int[count];
+		for(int i=0; i<count; i++){
+			values[i] = in.readInt();
+		}
+		return values;
+	}
+
+	/*******************************************/
+	// Setters/Getters
+	/*******************************************/
+
+	//total number of slots
+	public int size(){
+		return offsets.length;
+	}
+	//first slot of a section
+	public int getSectionStart(int section){
+		return sectionStarts[section];
+	}
+	//one past the last slot of a section
+	public int getSectionEnd(int section){
+		return sectionStarts[section + 1];
+	}
+	//offset of the pokemon byte
+	public int getOffset(int slot){
+		return offsets[slot];
+	}
+	//offset of the slot's level byte, -1 if it doesn't have one
+	public int getLevelOffset(int slot){
+		return levelOffsets[slot];
+	}
+	//wild area or trainer party number within the section, 0 for the title screen and starters
+	public int getGroup(int slot){
+		return groups[slot];
+	}
+	//section a slot belongs to
+	public int getSection(int slot){
+		int section = 0;
+		while(slot >= sectionStarts[section + 1]){
+			section++;
+		}
+		return section;
+	}
+
+	/*******************************************/
+	// Builder
+	/*******************************************/
+
+	private static class Builder implements SectionLayout.SlotSink {
+		private int[] offsets = new int[1024];
+		private int[] levelOffsets = new int[1024];
+		private int[] groups = new int[1024];
+		private int[] sectionStarts = new int[Section.COUNT + 1];
+		private int size = 0;
+
+		void startSection(int section){
+			sectionStarts[section] = size;
+		}
+
+		public void add(int offset, int levelOffset, int group){
+			if(size == offsets.length){
+				offsets = Arrays.copyOf(offsets, size * 2);
+				levelOffsets = Arrays.copyOf(levelOffsets, size * 2);
+				groups = Arrays.copyOf(groups, size * 2);
+			}
+			offsets[size] = offset;
+			levelOffsets[size] = levelOffset;
+			groups[size] = group;
+			size++;
+		}
+
+		SlotIndex toSlotIndex(){
+			sectionStarts[Section.COUNT] = size;
+			return new SlotIndex(Arrays.copyOf(offsets, size), Arrays.copyOf(levelOffsets, size),
+					Arrays.copyOf(groups, size), sectionStarts);
+		}
+	}
+}
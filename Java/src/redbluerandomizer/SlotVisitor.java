@@ -0,0 +1,11 @@
+package redbluerandomizer;
+
+//sees the pokemon a seed puts in each slot when RedBlueRandomizer.replay works them out without writing the ROM
+public interface SlotVisitor {
+
+	//whether replay should work out a section at all, sections that aren't visited cost nothing
+	boolean visitsSection(int section);
+
+	//called with a slot's new pokemon (or its unchanged one if the section isn't randomized), returning false stops the replay
+	boolean visitSlot(int section, int slot, int pokemon);
+}
@@ -1,6 +1,7 @@
 package redbluerandomizer;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 
@@ -19,7 +20,7 @@ public class Test {
 	/**
 	 * @param args
 	 */
-	public static void main(String[] args) {
+	public static void main(String[] args) throws IOException {
 		RedBlueRandomizer br = new RedBlueRandomizer();
 		br.readRom(inputFile);
 		br.setPlayerStartersToggle(true);
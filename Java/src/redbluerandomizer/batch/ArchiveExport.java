@@ -0,0 +1,283 @@
+package redbluerandomizer.batch;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import redbluerandomizer.io.ZipWriter;
+
+//streams a batch into one ZIP as it's randomized. the batch workers compress their own output (so deflating
+//runs on every worker thread) and hand the entries to a bounded queue, one writer thread takes them off and
+//writes them out. a full queue blocks the workers, so at most queueSize compressed entries are ever waiting
+//in memory and nothing is written to disk twice. the manifest is deflated into a temp file next to the
+//archive as the seeds come in and copied in at the end, so it doesn't grow in memory with the run either
+public class ArchiveExport {
+
+	public static final String manifestName = "manifest.csv";
+
+	//the end of the queue
+	private static final ZipWriter.Entry end = new ZipWriter.Entry("", ZipWriter.STORED, 0, 0, new byte[0], 0);
+
+	private final File file;
+	private final ZipWriter zip;
+	private final BlockingQueue<ZipWriter.Entry> queue;
+	private final Thread writer;
+	private final ThreadLocal<Deflater> deflaters;
+	//every deflater the workers made, ended with the archive so their native memory doesn't wait for the GC
+	private final List<Deflater> allDeflaters = new ArrayList<Deflater>();
+	private final int level;
+	//the manifest so far, compressed, and the CRC and size of the text that went into it
+	private File manifestFile = null;
+	private OutputStream manifestOut = null;
+	private Deflater manifestDeflater = null;
+	private final CRC32 manifestCrc = new CRC32();
+	private long manifestSize = 0;
+	//lines that came in ahead of the next seed, held until the seeds before them arrive so the manifest is in
+	//seed order whatever order the workers finish in. the workers take the seeds in order, so it only ever
+	//holds a few lines per thread, not the whole run
+	private final TreeMap<Long, String> pending = new TreeMap<Long, String>();
+	private long nextSeed;
+	private volatile IOException failure;
+	private long bytesIn = 0;
+
+	public ArchiveExport(File file, int queueSize, final int level) throws IOException {
+		this.file = file;
+		this.level = level;
+		zip = new ZipWriter(new BufferedOutputStream(new FileOutputStream(file), 256 * 1024));
+		queue = new ArrayBlockingQueue<ZipWriter.Entry>(Math.max(1, queueSize));
+		deflaters = new ThreadLocal<Deflater>() {
+			@Override
+			protected Deflater initialValue(){
+				//raw deflate, the ZIP headers take the place of the zlib wrapper
+				Deflater deflater = new Deflater(level, true);
+				synchronized(allDeflaters){
+					allDeflaters.add(deflater);
+				}
+				return deflater;
+			}
+		};
+		writer = new Thread(new Runnable() {
+			public void run(){
+				writeEntries();
+			}
+		}, "archive writer");
+		writer.start();
+	}
+
+	/*******************************************/
+	// Add
+	/*******************************************/
+
+	//compresses an entry on the calling thread and queues it, waiting while the queue is full
+	public void add(String name, byte[] data, int length) throws IOException {
+		ZipWriter.Entry entry = ZipWriter.Entry.compress(name, data, length, deflaters.get());
+		put(entry);
+	}
+
+	//starts a manifest whose lines are added by seed from firstSeed on, it's written at the end of the archive
+	public synchronized void startManifest(String header, long firstSeed) throws IOException {
+		manifestFile = File.createTempFile(file.getName() + "-", ".manifest", file.getAbsoluteFile().getParentFile());
+		manifestDeflater = new Deflater(level, true);
+		manifestOut = new BufferedOutputStream(new DeflaterOutputStream(new FileOutputStream(manifestFile), manifestDeflater, 64 * 1024), 64 * 1024);
+		nextSeed = firstSeed;
+		writeManifestLine(header);
+	}
+
+	//adds a seed's line to the manifest, in seed order
+	public synchronized void addToManifest(long seed, String line) throws IOException {
+		if(manifestOut == null){
+			return;
+		}
+		if(seed != nextSeed){
+			pending.put(seed, line);
+			return;
+		}
+		writeManifestLine(line);
+		nextSeed++;
+		while(!pending.isEmpty() && pending.firstKey() == nextSeed){
+			writeManifestLine(pending.pollFirstEntry().getValue());
+			nextSeed++;
+		}
+	}
+
+	private void writeManifestLine(String line) throws IOException {
+		byte[] bytes = (line + "\n").getBytes(StandardCharsets.UTF_8);
+		manifestCrc.update(bytes);
+		manifestSize += bytes.length;
+		manifestOut.write(bytes);
+	}
+
+	private void put(ZipWriter.Entry entry) throws IOException {
+		checkFailure();
+		try{
+			queue.put(entry);
+		}
+		catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the archive");
+		}
+	}
+
+	private void checkFailure() throws IOException {
+		if(failure != null){
+			throw new IOException("Could not write " + file, failure);
+		}
+	}
+
+	/*******************************************/
+	// Writer
+	/*******************************************/
+
+	private void writeEntries(){
+		try{
+			ZipWriter.Entry entry;
+			while((entry = queue.take()) != end){
+				if(failure == null){
+					zip.write(entry);
+					bytesIn += entry.size;
+				}
+			}
+		}
+		catch(InterruptedException e){
+			//aborted, leave the archive unfinished
+		}
+		catch(IOException e){
+			failure = e;
+			//keep taking entries so the workers aren't left blocked on a full queue
+			drain();
+		}
+	}
+
+	private void drain(){
+		try{
+			while(queue.take() != end){
+			}
+		}
+		catch(InterruptedException e){
+		}
+	}
+
+	//writes the manifest and the central directory, then closes the file
+	public void finish() throws IOException {
+		try{
+			put(end);
+			try{
+				writer.join();
+			}
+			catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+				writer.interrupt();
+				throw new InterruptedIOException("Interrupted while finishing the archive");
+			}
+			checkFailure();
+			//the writer's done, so the manifest goes straight into the archive from this thread
+			if(manifestOut != null){
+				writeManifest();
+			}
+			zip.close();
+		}
+		finally{
+			release();
+		}
+	}
+
+	//copies the compressed manifest in as the last entry
+	private synchronized void writeManifest() throws IOException {
+		//seeds a stopped run never got to leave a gap, the lines after it still go in order
+		for(Map.Entry<Long, String> line: pending.entrySet()){
+			writeManifestLine(line.getValue());
+		}
+		pending.clear();
+		manifestOut.close();
+		manifestOut = null;
+		InputStream in = new BufferedInputStream(new FileInputStream(manifestFile));
+		try{
+			zip.write(manifestName, ZipWriter.DEFLATED, manifestCrc.getValue(), manifestSize, manifestFile.length(), in);
+		}
+		finally{
+			in.close();
+		}
+	}
+
+	//stops the writer and deletes the unfinished archive
+	public void abort(){
+		writer.interrupt();
+		try{
+			writer.join();
+		}
+		catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+		}
+		try{
+			zip.close();
+		}
+		catch(IOException e){
+			//it's being deleted anyway
+		}
+		release();
+		file.delete();
+	}
+
+	//ends the deflaters and deletes the manifest's temp file, nothing can be added after this
+	private synchronized void release(){
+		if(manifestOut != null){
+			try{
+				manifestOut.close();
+			}
+			catch(IOException e){
+				//it's being deleted anyway
+			}
+			manifestOut = null;
+		}
+		if(manifestFile != null){
+			manifestFile.delete();
+			manifestFile = null;
+		}
+		if(manifestDeflater != null){
+			manifestDeflater.end();
+			manifestDeflater = null;
+		}
+		synchronized(allDeflaters){
+			for(Deflater deflater: allDeflaters){
+				deflater.end();
+			}
+			allDeflaters.clear();
+		}
+		pending.clear();
+	}
+
+	/*******************************************/
+	// Setters/Getters
+	/*******************************************/
+
+	public File getFile(){
+		return file;
+	}
+	//uncompressed bytes written so far, only meaningful after finish
+	public long getBytesIn(){
+		return bytesIn;
+	}
+	//size of the archive, only meaningful after finish
+	public long getBytesOut(){
+		return zip.getPosition();
+	}
+	public int getEntryCount(){
+		return zip.getEntryCount();
+	}
+}
@@ -0,0 +1,464 @@
+package redbluerandomizer.batch;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+
+import redbluerandomizer.RandomizerOptions;
+import redbluerandomizer.RedBlueRandomizer;
+import redbluerandomizer.SlotIndex;
+import redbluerandomizer.io.RomFile;
+import redbluerandomizer.io.RomHash;
+import redbluerandomizer.metrics.RandomizerMetrics;
+import redbluerandomizer.spoiler.SpoilerStore;
+import redbluerandomizer.spoiler.SpoilerWriter;
+import redbluerandomizer.verify.RomVerifier;
+
+public class BatchRandomizer {
+
+	private final File baseRomFile;
+	private final byte[] baseRom;
+	private final SlotIndex slots;
+	private final boolean pokemonRedBlue;
+	private final RomVerifier verifier;
+	private final RandomizerOptions options;
+	private final File outputDirectory;
+	private final String outputPrefix;
+
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private long firstSeed = new Date().getTime();
+	private boolean writePatches = false;
+	private boolean writeRoms = true;
+	private int spoilerFormat = -1;
+	private boolean verify = false;
+	private ArchiveExport archive = null;
+	private CheckpointLog checkpoint = null;
+	private SpoilerStore spoilerStore = null;
+	private final AtomicInteger verifyFailures = new AtomicInteger();
+
+	//the base ROM is read once and shared read-only between all of the workers, each one only keeps its own writes
+	public BatchRandomizer(File baseRomFile, RandomizerOptions options, File outputDirectory, String outputPrefix) throws IOException {
+		this.baseRomFile = baseRomFile;
+		//the slots are found once (or read from the cache) and shared by every worker
+		RedBlueRandomizer reader = new RedBlueRandomizer();
+		reader.loadRom(RomFile.read(baseRomFile));
+		this.baseRom = reader.getBaseRom();
+		this.slots = SlotIndex.load(reader, baseRom, SlotIndex.getDefaultCacheDirectory());
+		this.pokemonRedBlue = reader.isPokemonRedBlue();
+		this.verifier = new RomVerifier(reader, baseRom, slots);
+		this.options = options;
+		this.outputDirectory = outputDirectory;
+		this.outputPrefix = outputPrefix;
+	}
+
+	/*******************************************/
+	// Run
+	/*******************************************/
+
+	//randomizes count ROMs using seeds firstSeed .. firstSeed + count - 1, returns the number written.
+	//with a checkpoint log the batches it has as done are skipped and every finished batch is added to it
+	public int run(final int count) throws InterruptedException, ExecutionException {
+		final AtomicInteger nextBatch = new AtomicInteger();
+		final int batchSize = checkpoint != null ? checkpoint.getBatchSize() : 1;
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try{
+			List<Future<Integer>> workers = new ArrayList<Future<Integer>>();
+			for(int i=0; i<threads; i++){
+				workers.add(pool.submit(new Callable<Integer>() {
+					public Integer call() throws Exception {
+						return runWorker(nextBatch, count, batchSize);
+					}
+				}));
+			}
+			int written = 0;
+			for(Future<Integer> worker: workers){
+				written += worker.get();
+			}
+			return written;
+		}
+		finally{
+			pool.shutdownNow();
+		}
+	}
+
+	//pulls batches of jobs until the run is done, each worker has its own randomizer, view of the base and RNG.
+	//a worker only ever holds its own batch, so memory stays the same however many seeds there are
+	private int runWorker(AtomicInteger nextBatch, int count, int batchSize) throws IOException {
+		RedBlueRandomizer randomizer = new RedBlueRandomizer();
+		options.applyTo(randomizer);
+		//randomize() drops the previous job's writes, the base itself is never copied
+		randomizer.loadRom(baseRom);
+		randomizer.setSlotIndex(slots);
+		SpoilerWriter spoiler = spoilerFormat < 0 ? null : new SpoilerWriter(randomizer, spoilerFormat);
+		//the verifier checks the bytes as they'll be written, so it gets the whole ROM
+		byte[] verifyBuffer = verify || (archive != null && !writePatches) ? new byte[baseRom.length] : null;
+		EntryBuffer entryBuffer = archive != null ? new EntryBuffer() : null;
+		int written = 0;
+		int batches = (int)((count + (long)batchSize - 1) / batchSize);
+		int batch;
+		while((batch = nextBatch.getAndIncrement()) < batches){
+			if(checkpoint != null && checkpoint.isDone(batch)){
+				continue;
+			}
+			int end = (int)Math.min(count, (long)(batch + 1) * batchSize);
+			for(int job=batch * batchSize; job<end; job++){
+				if(Thread.currentThread().isInterrupted()){
+					return written;
+				}
+				long seed = firstSeed + job;
+				randomizer.setSeed(seed);
+				randomizer.randomize();
+				if(verifyBuffer != null){
+					randomizer.getRomView().copyTo(verifyBuffer);
+				}
+				if(verify){
+					RomVerifier.Report report = verifier.verify(verifyBuffer, options);
+					if(!report.isOk()){
+						verifyFailures.incrementAndGet();
+						System.err.println("Seed " + seed + " failed verification: " + report + "\n  " + report.messages);
+					}
+				}
+				if(spoilerStore != null){
+					spoilerStore.append(seed, randomizer.getRomView());
+				}
+				if(archive != null){
+					addToArchive(randomizer, spoiler, seed, verifyBuffer, entryBuffer);
+				}
+				else{
+					if(!writeRoms){
+						//only the spoilers
+					}
+					else if(writePatches){
+						randomizer.savePatch(getOutputFile(seed).getPath());
+					}
+					else{
+						randomizer.saveRom(getOutputFile(seed).getPath());
+					}
+					if(spoiler != null){
+						spoiler.write(randomizer.getRomView(), slots, seed, getSpoilerFile(seed, spoiler));
+					}
+				}
+				written++;
+			}
+			if(checkpoint != null){
+				//a batch the log calls done has to survive a power cut, not just the process dying
+				forceBatch(batch * batchSize, end, spoiler);
+				checkpoint.commit(batch);
+			}
+		}
+		return written;
+	}
+
+	//forces the files of jobs [start, end) to disk
+	private void forceBatch(int start, int end, SpoilerWriter spoiler) throws IOException {
+		for(int job=start; job<end; job++){
+			long seed = firstSeed + job;
+			if(writeRoms){
+				RomFile.force(getOutputFile(seed));
+			}
+			if(spoiler != null){
+				RomFile.force(getSpoilerFile(seed, spoiler));
+			}
+		}
+	}
+
+	//compresses the ROM (or patch) and spoiler into the archive, romBuffer already holds the ROM
+	private void addToArchive(RedBlueRandomizer randomizer, SpoilerWriter spoiler, long seed, byte[] romBuffer,
+			EntryBuffer entryBuffer) throws IOException {
+		String name = getOutputFile(seed).getName();
+		if(writePatches){
+			entryBuffer.reset();
+			randomizer.getRomView().toDiff().writeIps(entryBuffer, baseRom);
+			archive.add(name, entryBuffer.getBuffer(), entryBuffer.size());
+		}
+		else{
+			archive.add(name, romBuffer, romBuffer.length);
+		}
+		String spoilerName = "";
+		if(spoiler != null){
+			spoilerName = getSpoilerFile(seed, spoiler).getName();
+			entryBuffer.reset();
+			spoiler.write(randomizer.getRomView(), slots, seed, Channels.newChannel(entryBuffer));
+			archive.add(spoilerName, entryBuffer.getBuffer(), entryBuffer.size());
+		}
+		archive.addToManifest(seed, seed + "," + name + "," + spoilerName + "," + options);
+	}
+
+	//a reusable buffer whose bytes can be compressed without copying them out first
+	private static class EntryBuffer extends ByteArrayOutputStream {
+		byte[] getBuffer(){
+			return buf;
+		}
+	}
+
+	//checks the base ROM's name
+	public boolean isPokemonRedBlue(){
+		return pokemonRedBlue;
+	}
+
+	//output file for a given seed
+	public File getOutputFile(long seed){
+		return new File(outputDirectory, outputPrefix + "-" + seed + (writePatches ? ".ips" : ".gb"));
+	}
+
+	//spoiler file for a given seed
+	public File getSpoilerFile(long seed, SpoilerWriter spoiler){
+		return new File(outputDirectory, outputPrefix + "-" + seed + "." + spoiler.getExtension());
+	}
+
+	/*******************************************/
+	// Setters/Getters
+	/*******************************************/
+
+	public void setThreads(int threads){
+		this.threads = Math.max(1, threads);
+	}
+	public int getThreads(){
+		return threads;
+	}
+	public void setFirstSeed(long seed){
+		this.firstSeed = seed;
+	}
+	public long getFirstSeed(){
+		return firstSeed;
+	}
+	public void setWritePatches(boolean writePatches){
+		this.writePatches = writePatches;
+	}
+	//false to only write spoilers, e.g. to fill a spoiler store with millions of seeds
+	public void setWriteRoms(boolean writeRoms){
+		this.writeRoms = writeRoms;
+	}
+	//checks every ROM against the base before it's written
+	public void setVerify(boolean verify){
+		this.verify = verify;
+	}
+	//number of ROMs that failed verification
+	public int getVerifyFailures(){
+		return verifyFailures.get();
+	}
+	//streams the ROMs, spoilers and a manifest into an archive instead of writing files,
+	//the caller finishes it after run()
+	public void setArchive(ArchiveExport archive){
+		this.archive = archive;
+	}
+	//skips the batches the log has as done and logs every batch that finishes
+	public void setCheckpoint(CheckpointLog checkpoint){
+		this.checkpoint = checkpoint;
+	}
+	//what a checkpoint log has to match to resume this run: the base ROM, options and output format
+	public String getRunDescription(){
+		return getRomHash() + "\t" + (writePatches ? "ips" : "rom") + "\t" +
+				(spoilerFormat < 0 ? "-" : SpoilerWriter.formatNames[spoilerFormat]) + "\t" + options;
+	}
+	//adds every seed's slots to a columnar store for queries across the whole run
+	public void setSpoilerStore(SpoilerStore spoilerStore){
+		this.spoilerStore = spoilerStore;
+	}
+	//RomHash.sha1 of the base ROM
+	public String getRomHash(){
+		return RomHash.sha1(baseRom);
+	}
+	public SlotIndex getSlotIndex(){
+		return slots;
+	}
+	public RandomizerOptions getOptions(){
+		return options;
+	}
+	//one of the SpoilerWriter formats, or -1 for no spoilers
+	public void setSpoilerFormat(int spoilerFormat){
+		this.spoilerFormat = spoilerFormat;
+	}
+
+	/*******************************************/
+	// Command Line
+	/*******************************************/
+
+	public static void main(String[] args) throws Exception {
+		if(args.length < 3){
+			printUsage();
+			return;
+		}
+		String inputFile = args[0];
+		File outputDirectory = new File(args[1]);
+		int count = Integer.parseInt(args[2]);
+
+		RandomizerOptions options = new RandomizerOptions();
+		Integer threads = null;
+		Long seed = null;
+		boolean writePatches = false;
+		boolean writeRoms = true;
+		int spoilerFormat = -1;
+		boolean verify = false;
+		File archiveFile = null;
+		int level = Deflater.DEFAULT_COMPRESSION;
+		File storeFile = null;
+		boolean resumable = false;
+		int batchSize = 1000;
+		for(int i=3; i<args.length; i++){
+			if(args[i].equals("--threads") && i + 1 < args.length){
+				threads = Integer.parseInt(args[++i]);
+			}
+			else if(args[i].equals("--seed") && i + 1 < args.length){
+				seed = Long.parseLong(args[++i]);
+			}
+			else if(args[i].equals("--ips")){
+				writePatches = true;
+			}
+			else if(args[i].equals("--no-roms")){
+				writeRoms = false;
+			}
+			else if(args[i].equals("--zip") && i + 1 < args.length){
+				archiveFile = new File(args[++i]);
+			}
+			else if(args[i].equals("--level") && i + 1 < args.length){
+				level = Integer.parseInt(args[++i]);
+			}
+			else if(args[i].equals("--spoiler-store") && i + 1 < args.length){
+				storeFile = new File(args[++i]);
+			}
+			else if(args[i].equals("--checkpoint")){
+				resumable = true;
+			}
+			else if(args[i].equals("--batch-size") && i + 1 < args.length){
+				batchSize = Math.max(1, Integer.parseInt(args[++i]));
+			}
+			else if(args[i].equals("--verify")){
+				verify = true;
+			}
+			else if(args[i].equals("--spoiler") && i + 1 < args.length){
+				spoilerFormat = SpoilerWriter.parseFormat(args[++i]);
+				if(spoilerFormat < 0){
+					System.err.println("Unknown spoiler format: " + args[i]);
+					printUsage();
+					return;
+				}
+			}
+			else if(!options.parseFlag(args[i])){
+				System.err.println("Unknown option: " + args[i]);
+				printUsage();
+				return;
+			}
+		}
+
+		if(resumable && archiveFile != null){
+			System.err.println("--checkpoint can't be used with --zip, an archive can't be resumed");
+			return;
+		}
+		if(!writeRoms && archiveFile != null){
+			System.err.println("--no-roms can't be used with --zip");
+			return;
+		}
+		if(resumable && storeFile != null){
+			//a batch that runs again would add its seeds to the store a second time
+			System.err.println("--checkpoint can't be used with --spoiler-store");
+			return;
+		}
+		if(archiveFile == null && !outputDirectory.isDirectory() && !outputDirectory.mkdirs()){
+			System.err.println("Could not create " + outputDirectory);
+			return;
+		}
+
+		File baseRomFile = new File(inputFile);
+		String prefix = baseRomFile.getName().replaceFirst("(?i)\\.gb$", "");
+		BatchRandomizer batch = new BatchRandomizer(baseRomFile, options, outputDirectory, prefix);
+		if(!batch.isPokemonRedBlue()){
+			System.err.println("Warning: This doesn't look like a Pokemon Red or Blue ROM...");
+		}
+		if(threads != null){
+			batch.setThreads(threads);
+		}
+		batch.setWritePatches(writePatches);
+		batch.setWriteRoms(writeRoms);
+		batch.setSpoilerFormat(spoilerFormat);
+		batch.setVerify(verify);
+		CheckpointLog checkpoint = null;
+		if(resumable){
+			File checkpointFile = new File(outputDirectory, prefix + ".checkpoint");
+			//a resumed run can leave out the seed, it's in the log
+			if(seed == null && checkpointFile.isFile()){
+				seed = CheckpointLog.read(checkpointFile).getFirstSeed();
+			}
+			checkpoint = CheckpointLog.open(checkpointFile, batch.getRunDescription(), seed != null ? seed : batch.getFirstSeed(),
+					count, batchSize);
+			if(checkpoint.getDoneCount() > 0){
+				System.out.println("Resuming " + checkpoint.describe() + ": " + checkpoint.getDoneCount() + " of " +
+						checkpoint.getBatchCount() + " batches (" + checkpoint.getDoneSeeds() + " seeds) already done");
+			}
+			batch.setCheckpoint(checkpoint);
+		}
+		if(seed != null){
+			batch.setFirstSeed(seed);
+		}
+		SpoilerStore store = null;
+		if(storeFile != null){
+			store = SpoilerStore.openForAppend(storeFile, batch.getRomHash(), options.toString(), batch.getSlotIndex());
+			batch.setSpoilerStore(store);
+		}
+		ArchiveExport archive = null;
+		if(archiveFile != null){
+			//a couple of entries per thread is enough to keep the writer busy
+			archive = new ArchiveExport(archiveFile, batch.getThreads() * 2, level);
+			batch.setArchive(archive);
+		}
+
+		long start = System.nanoTime();
+		int written;
+		try{
+			if(archive != null){
+				archive.startManifest("seed,file,spoiler,options", batch.getFirstSeed());
+			}
+			written = batch.run(count);
+			if(archive != null){
+				archive.finish();
+			}
+		}
+		catch(Exception e){
+			if(archive != null){
+				archive.abort();
+			}
+			throw e;
+		}
+		finally{
+			if(checkpoint != null){
+				checkpoint.close();
+			}
+			if(store != null){
+				store.close();
+			}
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.println(String.format("Randomized %d ROMs (seeds %d-%d) on %d threads in %.2fs: %.1f ROMs/sec",
+				written, batch.getFirstSeed(), batch.getFirstSeed() + count - 1, batch.getThreads(), seconds, written / seconds));
+		if(archive != null){
+			System.out.println(String.format("Wrote %s: %d entries, %.1fMB from %.1fMB", archive.getFile(), archive.getEntryCount(),
+					archive.getBytesOut() / 1e6, archive.getBytesIn() / 1e6));
+		}
+		System.out.print(RandomizerMetrics.get());
+		if(verify){
+			System.out.println(batch.getVerifyFailures() == 0 ? "All ROMs passed verification" : batch.getVerifyFailures() + " ROMs failed verification");
+		}
+	}
+
+	private static void printUsage(){
+		System.err.println("Usage: BatchRandomizer <base rom> <output directory> <count> [--threads n] [--seed first seed] [--ips] [--spoiler csv|jsonl|bin] [--verify] [--zip file] [--level 0-9] [--checkpoint] [--batch-size 1000] [--spoiler-store file] [--no-roms] [options]\n" +
+				"  --zip file         write everything into one ZIP (with a manifest.csv) instead of the output directory\n" +
+				"  --level 0-9        deflate level for --zip (default 6)\n" +
+				"  --checkpoint       log finished batches to <output directory>/<rom>.checkpoint, running the same\n" +
+				"                     command again (the seed can be left out) skips them\n" +
+				"  --spoiler-store file  add every seed's slots to a store that SpoilerStore can query, one byte per slot\n" +
+				"  --no-roms          don't write ROMs or patches, only spoilers and the spoiler store\n" +
+				RandomizerOptions.getUsage());
+	}
+}
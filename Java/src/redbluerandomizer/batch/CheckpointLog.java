@@ -0,0 +1,177 @@
+package redbluerandomizer.batch;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+
+//an append-only log of the finished batches of a long run, so a run that dies can pick up where it stopped.
+//the first line says what the run is (base ROM, options, seeds, batch size, output) and every line after it
+//is one batch whose files are all written, forced to disk before the next batch is taken. a last line cut
+//short by a crash is ignored, that batch just runs again
+public class CheckpointLog {
+
+	private static final String magic = "RBCK";
+	private static final int version = 1;
+
+	private final File file;
+	private final String run;
+	private final long firstSeed;
+	private final int count;
+	private final int batchSize;
+	private final BitSet done;
+	//bytes up to the end of the last whole line
+	private long length = 0;
+	private FileChannel channel;
+
+	private CheckpointLog(File file, String run, long firstSeed, int count, int batchSize, BitSet done){
+		this.file = file;
+		this.run = run;
+		this.firstSeed = firstSeed;
+		this.count = count;
+		this.batchSize = batchSize;
+		this.done = done;
+	}
+
+	/*******************************************/
+	// Open
+	/*******************************************/
+
+	//starts a new log, or picks up an existing one when it's for the same run.
+	//run describes everything besides the seeds that changes the output (ROM hash, options, format)
+	public static CheckpointLog open(File file, String run, long firstSeed, int count, int batchSize) throws IOException {
+		CheckpointLog log;
+		if(file.isFile()){
+			log = read(file);
+			if(!log.run.equals(run) || log.firstSeed != firstSeed || log.count != count || log.batchSize != batchSize){
+				throw new IOException(file + " is for a different run (" + log.describe() + "), delete it to start over");
+			}
+		}
+		else{
+			log = new CheckpointLog(file, run, firstSeed, count, batchSize, new BitSet());
+			byte[] header = (magic + "\t" + version + "\t" + firstSeed + "\t" + count + "\t" + batchSize + "\t" + run + "\n")
+					.getBytes(StandardCharsets.UTF_8);
+			Files.write(file.toPath(), header);
+		}
+		log.channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+		//a line cut short by a crash would run into the next one written, so it goes before anything is added
+		if(log.length > 0 && log.channel.size() > log.length){
+			log.channel.truncate(log.length);
+		}
+		log.channel.position(log.channel.size());
+		log.channel.force(true);
+		return log;
+	}
+
+	//reads an existing log, for resuming a run without having to give its seeds again
+	public static CheckpointLog read(File file) throws IOException {
+		byte[] bytes = Files.readAllBytes(file.toPath());
+		String text = new String(bytes, StandardCharsets.UTF_8);
+		int lineEnd = text.indexOf('\n');
+		String[] header = (lineEnd < 0 ? "" : text.substring(0, lineEnd)).split("\t", 6);
+		if(header.length < 6 || !header[0].equals(magic) || !header[1].equals(Integer.toString(version))){
+			throw new IOException(file + " is not a checkpoint log");
+		}
+		CheckpointLog log;
+		try{
+			log = new CheckpointLog(file, header[5], Long.parseLong(header[2]), Integer.parseInt(header[3]),
+					Integer.parseInt(header[4]), new BitSet());
+			//only whole lines count, the last one may have been cut short
+			int start = lineEnd + 1;
+			int end;
+			while((end = text.indexOf('\n', start)) >= 0){
+				String line = text.substring(start, end);
+				int tab = line.indexOf('\t');
+				int batch = Integer.parseInt(tab < 0 ? line : line.substring(0, tab));
+				if(batch >= 0 && batch < log.getBatchCount()){
+					log.done.set(batch);
+				}
+				start = end + 1;
+			}
+			int lastLineEnd = bytes.length - 1;
+			while(lastLineEnd >= 0 && bytes[lastLineEnd] != '\n'){
+				lastLineEnd--;
+			}
+			log.length = lastLineEnd + 1;
+		}
+		catch(NumberFormatException e){
+			throw new IOException(file + " is damaged", e);
+		}
+		return log;
+	}
+
+	/*******************************************/
+	// Batches
+	/*******************************************/
+
+	public synchronized boolean isDone(int batch){
+		return done.get(batch);
+	}
+
+	//records a finished batch, call once all of its files are written and forced to disk
+	public synchronized void commit(int batch) throws IOException {
+		long first = firstSeed + (long)batch * batchSize;
+		long last = firstSeed + Math.min(count, (long)(batch + 1) * batchSize) - 1;
+		ByteBuffer line = ByteBuffer.wrap((batch + "\t" + first + "\t" + last + "\n").getBytes(StandardCharsets.UTF_8));
+		while(line.hasRemaining()){
+			channel.write(line);
+		}
+		channel.force(false);
+		length = channel.position();
+		done.set(batch);
+	}
+
+	public synchronized void close() throws IOException {
+		if(channel != null){
+			channel.close();
+			channel = null;
+		}
+	}
+
+	/*******************************************/
+	// Setters/Getters
+	/*******************************************/
+
+	public File getFile(){
+		return file;
+	}
+	public long getFirstSeed(){
+		return firstSeed;
+	}
+	public int getCount(){
+		return count;
+	}
+	public int getBatchSize(){
+		return batchSize;
+	}
+	public int getBatchCount(){
+		return (int)((count + (long)batchSize - 1) / batchSize);
+	}
+	//first job (seed - firstSeed) of a batch
+	public int getBatchStart(int batch){
+		return batch * batchSize;
+	}
+	//one past the last job of a batch
+	public int getBatchEnd(int batch){
+		return (int)Math.min(count, (long)(batch + 1) * batchSize);
+	}
+	public synchronized int getDoneCount(){
+		return done.cardinality();
+	}
+	//number of seeds in the finished batches
+	public synchronized int getDoneSeeds(){
+		int seeds = 0;
+		for(int batch=done.nextSetBit(0); batch >= 0; batch=done.nextSetBit(batch + 1)){
+			seeds += getBatchEnd(batch) - getBatchStart(batch);
+		}
+		return seeds;
+	}
+
+	public String describe(){
+		return "seeds " + firstSeed + "-" + (firstSeed + count - 1) + " in batches of " + batchSize + ", " + run.replace('\t', ' ');
+	}
+}
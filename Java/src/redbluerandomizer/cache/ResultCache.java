@@ -0,0 +1,355 @@
+package redbluerandomizer.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import redbluerandomizer.RandomizerOptions;
+import redbluerandomizer.io.RomHash;
+import redbluerandomizer.patch.RomDiff;
+
+//randomization results keyed by (base ROM hash, options, seed), so a repeated seed isn't randomized again.
+//results are kept as RomDiffs (a few KB each) since both a full ROM and an IPS patch can be streamed from one.
+//the memory tier is an LRU with a byte budget in front of an LRU directory with its own budget. every new result is
+//written through to the directory as well, so a restart starts with everything that fit in the disk budget.
+public class ResultCache {
+
+	private static final int fileMagic = 0x52425244; //"RBRD"
+	private static final int fileVersion = 1;
+	private static final String fileExtension = ".diff";
+	private static final String tempExtension = ".tmp";
+	//rough per entry cost of the map, key and arrays on top of the changed bytes themselves
+	private static final int entryOverhead = 128;
+
+	private final long memoryBudget;
+	private final File directory;
+	private final long diskBudget;
+
+	//both maps are in access order, the first entry is the least recently used
+	private final LinkedHashMap<String, RomDiff> memory = new LinkedHashMap<String, RomDiff>(64, 0.75f, true);
+	private final LinkedHashMap<String, Long> disk = new LinkedHashMap<String, Long>(64, 0.75f, true);
+	private long memoryBytes = 0;
+	private long diskBytes = 0;
+
+	private final AtomicLong memoryHits = new AtomicLong();
+	private final AtomicLong diskHits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong memoryEvictions = new AtomicLong();
+	private final AtomicLong diskEvictions = new AtomicLong();
+
+	//directory may be null (or diskBudget 0) to only cache in memory
+	public ResultCache(long memoryBudget, File directory, long diskBudget){
+		this.memoryBudget = memoryBudget;
+		this.directory = diskBudget > 0 ? directory : null;
+		this.diskBudget = diskBudget;
+		if(this.directory != null){
+			loadDiskIndex();
+		}
+	}
+
+	//default disk tier location, ~/.redbluerandomizer/results
+	public static File getDefaultCacheDirectory(){
+		return new File(new File(System.getProperty("user.home"), ".redbluerandomizer"), "results");
+	}
+
+	//the cache key for a randomization, the ROM hash is RomHash.sha1 of the base
+	public static String key(String romHash, RandomizerOptions options, long seed){
+		try{
+			return RomHash.sha1((romHash + "|" + options + "|" + seed).getBytes("UTF-8"));
+		}
+		catch(UnsupportedEncodingException e){
+			//every JRE is required to provide UTF-8
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/*******************************************/
+	// Lookup
+	/*******************************************/
+
+	//the cached result, or null on a miss
+	public RomDiff get(String key){
+		synchronized(memory){
+			RomDiff diff = memory.get(key);
+			if(diff != null){
+				memoryHits.incrementAndGet();
+				return diff;
+			}
+		}
+		if(directory != null){
+			boolean onDisk;
+			synchronized(disk){
+				onDisk = disk.get(key) != null;
+			}
+			if(onDisk){
+				try{
+					RomDiff diff = read(getFile(key));
+					diskHits.incrementAndGet();
+					putMemory(key, diff);
+					return diff;
+				}
+				catch(IOException e){
+					//gone or damaged, treat it as a miss
+					removeDisk(key);
+				}
+			}
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+
+	public void put(String key, RomDiff diff){
+		putMemory(key, diff);
+		if(directory != null){
+			putDisk(key, diff);
+		}
+	}
+
+	//forgets everything, including the disk tier
+	public void clear(){
+		synchronized(memory){
+			memory.clear();
+			memoryBytes = 0;
+		}
+		if(directory != null){
+			synchronized(disk){
+				for(String key: disk.keySet()){
+					getFile(key).delete();
+				}
+				disk.clear();
+				diskBytes = 0;
+			}
+		}
+	}
+
+	/*******************************************/
+	// Tiers
+	/*******************************************/
+
+	private void putMemory(String key, RomDiff diff){
+		Map<String, RomDiff> evicted = new LinkedHashMap<String, RomDiff>();
+		synchronized(memory){
+			RomDiff old = memory.put(key, diff);
+			if(old != null){
+				memoryBytes -= getCost(old);
+			}
+			memoryBytes += getCost(diff);
+			Iterator<Map.Entry<String, RomDiff>> entries = memory.entrySet().iterator();
+			while(memoryBytes > memoryBudget && entries.hasNext()){
+				Map.Entry<String, RomDiff> eldest = entries.next();
+				entries.remove();
+				memoryBytes -= getCost(eldest.getValue());
+				memoryEvictions.incrementAndGet();
+				evicted.put(eldest.getKey(), eldest.getValue());
+			}
+		}
+		//spill to disk outside of the memory lock so lookups aren't held up by file writes, anything put
+		//is already there unless the disk tier has evicted it since
+		if(directory != null){
+			for(Map.Entry<String, RomDiff> entry: evicted.entrySet()){
+				putDisk(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	private void putDisk(String key, RomDiff diff){
+		synchronized(disk){
+			if(disk.containsKey(key)){
+				return;
+			}
+		}
+		File file = getFile(key);
+		try{
+			write(file, diff);
+		}
+		catch(IOException e){
+			//the disk tier is only a shortcut, carry on without this entry
+			return;
+		}
+		synchronized(disk){
+			Long old = disk.put(key, file.length());
+			if(old != null){
+				diskBytes -= old;
+			}
+			diskBytes += file.length();
+			Iterator<Map.Entry<String, Long>> entries = disk.entrySet().iterator();
+			while(diskBytes > diskBudget && entries.hasNext()){
+				Map.Entry<String, Long> eldest = entries.next();
+				entries.remove();
+				diskBytes -= eldest.getValue();
+				diskEvictions.incrementAndGet();
+				getFile(eldest.getKey()).delete();
+			}
+		}
+	}
+
+	private void removeDisk(String key){
+		synchronized(disk){
+			Long size = disk.remove(key);
+			if(size != null){
+				diskBytes -= size;
+			}
+		}
+		getFile(key).delete();
+	}
+
+	//picks up the files left by an earlier run, oldest first so they're evicted first
+	private void loadDiskIndex(){
+		if(!directory.isDirectory() && !directory.mkdirs()){
+			return;
+		}
+		File[] files = directory.listFiles();
+		if(files == null){
+			return;
+		}
+		Arrays.sort(files, new Comparator<File>() {
+			public int compare(File a, File b){
+				return Long.compare(a.lastModified(), b.lastModified());
+			}
+		});
+		synchronized(disk){
+			for(File file: files){
+				String name = file.getName();
+				if(name.endsWith(tempExtension)){
+					//a write an earlier run didn't finish
+					file.delete();
+				}
+				else if(name.endsWith(fileExtension)){
+					disk.put(name.substring(0, name.length() - fileExtension.length()), file.length());
+					diskBytes += file.length();
+				}
+			}
+		}
+	}
+
+	private static long getCost(RomDiff diff){
+		return diff.size() * 5L + entryOverhead;
+	}
+
+	private File getFile(String key){
+		return new File(directory, key + fileExtension);
+	}
+
+	/*******************************************/
+	// File I/O
+	/*******************************************/
+
+	private static void write(File file, RomDiff diff) throws IOException {
+		//write to a temp file first so a reader never sees half a result. every write has its own temp file,
+		//two threads that missed on the same key both write it and the last rename wins
+		File temp = File.createTempFile(file.getName(), tempExtension, file.getParentFile());
+		DataOutputStream out;
+		try{
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+		}
+		catch(IOException e){
+			temp.delete();
+			throw e;
+		}
+		try{
+			out.writeInt(fileMagic);
+			out.writeInt(fileVersion);
+			out.writeInt(diff.size());
+			for(int i=0; i<diff.size(); i++){
+				out.writeInt(diff.getOffset(i));
+				out.writeByte(diff.getValue(i));
+			}
+			out.close();
+		}
+		catch(IOException e){
+			//closing again after a failed close does nothing
+			out.close();
+			temp.delete();
+			throw e;
+		}
+		if(!temp.renameTo(file)){
+			file.delete();
+			if(!temp.renameTo(file)){
+				temp.delete();
+				throw new IOException("Could not write " + file);
+			}
+		}
+	}
+
+	private static RomDiff read(File file) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try{
+			if(in.readInt() != fileMagic || in.readInt() != fileVersion){
+				throw new IOException(file + " is not a cached result");
+			}
+			int count = in.readInt();
+			if(count < 0 || count > file.length()){
+				throw new IOException(file + " is damaged");
+			}
+			int[] offsets = new int[count];
+			byte[] values = new byte[count];
+			for(int i=0; i<count; i++){
+				offsets[i] = in.readInt();
+				values[i] = in.readByte();
+			}
+			return new RomDiff(offsets, values);
+		}
+		finally{
+			in.close();
+		}
+	}
+
+	/*******************************************/
+	// Metrics
+	/*******************************************/
+
+	public long getMemoryHits(){
+		return memoryHits.get();
+	}
+	public long getDiskHits(){
+		return diskHits.get();
+	}
+	public long getMisses(){
+		return misses.get();
+	}
+	public long getMemoryEvictions(){
+		return memoryEvictions.get();
+	}
+	public long getDiskEvictions(){
+		return diskEvictions.get();
+	}
+	public int getMemoryEntries(){
+		synchronized(memory){
+			return memory.size();
+		}
+	}
+	public long getMemoryBytes(){
+		synchronized(memory){
+			return memoryBytes;
+		}
+	}
+	public int getDiskEntries(){
+		synchronized(disk){
+			return disk.size();
+		}
+	}
+	public long getDiskBytes(){
+		synchronized(disk){
+			return diskBytes;
+		}
+	}
+
+	@Override
+	public String toString(){
+		return "memory hits " + getMemoryHits() + ", disk hits " + getDiskHits() + ", misses " + getMisses() +
+				"\nmemory " + getMemoryEntries() + " entries, " + getMemoryBytes() + "/" + memoryBudget + " bytes, " + getMemoryEvictions() + " evictions" +
+				"\ndisk " + getDiskEntries() + " entries, " + getDiskBytes() + "/" + diskBudget + " bytes, " + getDiskEvictions() + " evictions\n";
+	}
+}
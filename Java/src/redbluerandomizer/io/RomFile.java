@@ -0,0 +1,161 @@
+package redbluerandomizer.io;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import redbluerandomizer.patch.RomDiff;
+
+//FileChannel based ROM reading and writing
+public class RomFile {
+
+	private RomFile(){
+	}
+
+	/*******************************************/
+	// Read
+	/*******************************************/
+
+	//maps a ROM read-only, for passes over a file that don't keep it (e.g. a CRC). randomizers share a ROM
+	//as the byte[] from read(), which they never write to, so a process only ever holds one copy of the base
+	public static MappedByteBuffer map(File file) throws IOException {
+		FileChannel channel = new FileInputStream(file).getChannel();
+		try{
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, checkSize(file, channel.size()));
+		}
+		finally{
+			channel.close();
+		}
+	}
+
+	//reads a whole ROM, looping until the buffer is full since a single read may return less
+	public static byte[] read(File file) throws IOException {
+		FileChannel channel = new FileInputStream(file).getChannel();
+		try{
+			byte[] rom = new byte[checkSize(file, channel.size())];
+			ByteBuffer buffer = ByteBuffer.wrap(rom);
+			while(buffer.hasRemaining()){
+				if(channel.read(buffer) == -1){
+					throw new IOException(file + " ended after " + buffer.position() + " of " + rom.length + " bytes");
+				}
+			}
+			return rom;
+		}
+		finally{
+			channel.close();
+		}
+	}
+
+	/*******************************************/
+	// Write
+	/*******************************************/
+
+	//writes a whole ROM
+	public static void write(File file, byte[] rom) throws IOException {
+		FileChannel channel = new FileOutputStream(file).getChannel();
+		try{
+			writeFully(channel, ByteBuffer.wrap(rom), 0);
+		}
+		finally{
+			channel.close();
+		}
+	}
+
+	//writes the base with the changes swapped in, streamed through one buffer so the result is never built in memory.
+	//the stream goes through the channel, FileOutputStream would allocate native memory for every large write
+	public static void write(File file, RomDiff diff, byte[] base) throws IOException {
+		FileChannel channel = new FileOutputStream(file).getChannel();
+		try{
+			OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024);
+			diff.writeRom(out, base);
+			out.flush();
+		}
+		finally{
+			channel.close();
+		}
+	}
+
+	//writes a randomized ROM by having the OS copy the unmodified base file, then writing only
+	//the changed bytes in place
+	public static void write(File file, File baseFile, RomDiff diff) throws IOException {
+		FileChannel base = new FileInputStream(baseFile).getChannel();
+		try{
+			RandomAccessFile output = new RandomAccessFile(file, "rw");
+			try{
+				FileChannel channel = output.getChannel();
+				long size = base.size();
+				if(diff.size() > 0 && diff.getOffset(diff.size() - 1) >= size){
+					throw new IOException(baseFile + " is not the base of this ROM");
+				}
+				channel.truncate(size);
+				long position = 0;
+				while(position < size){
+					position += base.transferTo(position, size - position, channel);
+				}
+				writeChanges(channel, diff);
+			}
+			finally{
+				output.close();
+			}
+		}
+		finally{
+			base.close();
+		}
+	}
+
+	//positional writes of the changed bytes, adjacent changes are written together
+	public static void writeChanges(FileChannel channel, RomDiff diff) throws IOException {
+		byte[] run = new byte[256];
+		int i = 0;
+		while(i < diff.size()){
+			int start = diff.getOffset(i);
+			int length = 0;
+			while(i < diff.size() && diff.getOffset(i) == start + length){
+				if(length == run.length){
+					run = Arrays.copyOf(run, length * 2);
+				}
+				run[length++] = diff.getValue(i);
+				i++;
+			}
+			writeFully(channel, ByteBuffer.wrap(run, 0, length), start);
+		}
+	}
+
+	//makes sure a file written earlier is on the disk, not just in the OS's cache
+	public static void force(File file) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+		try{
+			channel.force(true);
+		}
+		finally{
+			channel.close();
+		}
+	}
+
+	/*******************************************/
+	// Misc.
+	/*******************************************/
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while(buffer.hasRemaining()){
+			position += channel.write(buffer, position);
+		}
+	}
+
+	private static int checkSize(File file, long size) throws IOException {
+		if(size > Integer.MAX_VALUE){
+			throw new IOException(file + " is too big to be a Game Boy ROM");
+		}
+		return (int)size;
+	}
+}
@@ -0,0 +1,33 @@
+package redbluerandomizer.io;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+//content hashes used to key anything cached per ROM
+public class RomHash {
+
+	private static final char[] hexDigits = "0123456789abcdef".toCharArray();
+
+	private RomHash(){
+	}
+
+	//SHA-1 of the ROM as a lowercase hex string
+	public static String sha1(byte[] rom){
+		try{
+			return toHex(MessageDigest.getInstance("SHA-1").digest(rom));
+		}
+		catch(NoSuchAlgorithmException e){
+			//every JRE is required to provide SHA-1
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public static String toHex(byte[] bytes){
+		char[] hex = new char[bytes.length * 2];
+		for(int i=0; i<bytes.length; i++){
+			hex[i * 2] = hexDigits[(bytes[i] >> 4) & 0xF];
+			hex[i * 2 + 1] = hexDigits[bytes[i] & 0xF];
+		}
+		return new String(hex);
+	}
+}
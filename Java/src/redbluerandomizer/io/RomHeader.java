@@ -0,0 +1,93 @@
+package redbluerandomizer.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+//the cartridge header (0x100-0x14F), enough to tell what a ROM is without reading the rest of it
+public class RomHeader {
+
+	public static final int size = 0x150;
+	public static final int titleStart = 0x134;
+	public static final int titleEnd = 0x144;
+	public static final int destinationOffset = 0x14A;
+	public static final int versionOffset = 0x14C;
+	public static final int headerChecksumOffset = 0x14D;
+	public static final int globalChecksumOffset = 0x14E;
+
+	public final String title;
+	//0 for Japan, 1 for everywhere else
+	public final int destination;
+	public final int version;
+	public final int headerChecksum;
+	public final int globalChecksum;
+	public final long fileSize;
+
+	private RomHeader(byte[] header, long fileSize){
+		this.title = readTitle(header);
+		this.destination = header[destinationOffset] & 0xFF;
+		this.version = header[versionOffset] & 0xFF;
+		this.headerChecksum = header[headerChecksumOffset] & 0xFF;
+		this.globalChecksum = ((header[globalChecksumOffset] & 0xFF) << 8) | (header[globalChecksumOffset + 1] & 0xFF);
+		this.fileSize = fileSize;
+	}
+
+	/*******************************************/
+	// Probe
+	/*******************************************/
+
+	//reads just the header with one positional read
+	public static RomHeader probe(File file) throws IOException {
+		FileChannel channel = new FileInputStream(file).getChannel();
+		try{
+			long fileSize = channel.size();
+			if(fileSize < size){
+				throw new IOException(file + " is too small to be a Game Boy ROM");
+			}
+			ByteBuffer buffer = ByteBuffer.allocate(size);
+			while(buffer.hasRemaining()){
+				if(channel.read(buffer, buffer.position()) == -1){
+					throw new IOException(file + " ended inside its header");
+				}
+			}
+			return new RomHeader(buffer.array(), fileSize);
+		}
+		finally{
+			channel.close();
+		}
+	}
+
+	//the header of a ROM that's already in memory
+	public static RomHeader of(byte[] rom){
+		if(rom.length < size){
+			throw new IllegalArgumentException("Too small to be a Game Boy ROM");
+		}
+		return new RomHeader(rom, rom.length);
+	}
+
+	//the title field, it's padded with zeros (or spaces) and on later carts shares space with the manufacturer code
+	public static String readTitle(byte[] header){
+		char[] title = new char[titleEnd - titleStart];
+		int length = 0;
+		for(int i=titleStart; i<titleEnd && header[i] != 0; i++){
+			title[length++] = (char)(header[i] & 0xFF);
+		}
+		return new String(title, 0, length).trim();
+	}
+
+	/*******************************************/
+	// Misc.
+	/*******************************************/
+
+	//the check the randomizer has always done: the title is POKEMON RED or POKEMON BLUE
+	public boolean isPokemonRedBlue(){
+		return title.equals("POKEMON RED") || title.equals("POKEMON BLUE");
+	}
+
+	@Override
+	public String toString(){
+		return String.format("%s v%d (%s) header %02X global %04X", title, version, destination == 0 ? "JP" : "intl", headerChecksum, globalChecksum);
+	}
+}
@@ -0,0 +1,267 @@
+package redbluerandomizer.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+//writes a ZIP archive from entries that were compressed beforehand, so compressing can happen on as many
+//threads as there are while one thread streams the archive out. ZipOutputStream can't do that since it
+//always compresses the entry itself. switches to ZIP64 records when there are more than 65535 entries or
+//the archive passes 4GB, a single entry has to be under 4GB
+public class ZipWriter {
+
+	public static final int STORED = 0;
+	public static final int DEFLATED = 8;
+
+	private static final int localHeaderSignature = 0x04034B50;
+	private static final int centralHeaderSignature = 0x02014B50;
+	private static final int endSignature = 0x06054B50;
+	private static final int zip64EndSignature = 0x06064B50;
+	private static final int zip64LocatorSignature = 0x07064B50;
+	private static final int zip64ExtraId = 0x0001;
+	//bit 11, names are UTF-8
+	private static final int utf8Flag = 0x0800;
+	private static final long maxInt = 0xFFFFFFFFL;
+	private static final int maxShort = 0xFFFF;
+
+	//a compressed entry ready to be written
+	public static class Entry {
+		public final String name;
+		public final int method;
+		public final long crc32;
+		public final long size;
+		public final byte[] data;
+		public final int dataLength;
+
+		public Entry(String name, int method, long crc32, long size, byte[] data, int dataLength){
+			this.name = name;
+			this.method = method;
+			this.crc32 = crc32;
+			this.size = size;
+			this.data = data;
+			this.dataLength = dataLength;
+		}
+
+		//deflates length bytes of data, or stores them when deflating doesn't make them smaller.
+		//the deflater is reset and can be reused for the next entry
+		public static Entry compress(String name, byte[] data, int length, Deflater deflater){
+			CRC32 crc = new CRC32();
+			crc.update(data, 0, length);
+			deflater.reset();
+			deflater.setInput(data, 0, length);
+			deflater.finish();
+			byte[] compressed = new byte[length + 64];
+			int compressedLength = 0;
+			while(!deflater.finished() && compressedLength < length){
+				compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+			}
+			if(!deflater.finished() || compressedLength >= length){
+				byte[] stored = new byte[length];
+				System.arraycopy(data, 0, stored, 0, length);
+				return new Entry(name, STORED, crc.getValue(), length, stored, length);
+			}
+			//trimmed so entries waiting to be written only hold what they need
+			return new Entry(name, DEFLATED, crc.getValue(), length, Arrays.copyOf(compressed, compressedLength), compressedLength);
+		}
+	}
+
+	//where an entry went, for the central directory, without its data
+	private static class Written {
+		final byte[] name;
+		final int method;
+		final long crc32;
+		final long size;
+		final long dataLength;
+		final long offset;
+
+		Written(byte[] name, int method, long crc32, long size, long dataLength, long offset){
+			this.name = name;
+			this.method = method;
+			this.crc32 = crc32;
+			this.size = size;
+			this.dataLength = dataLength;
+			this.offset = offset;
+		}
+	}
+
+	private final OutputStream out;
+	private final List<Written> written = new ArrayList<Written>();
+	private final int dosTime;
+	private final int dosDate;
+	private final byte[] header = new byte[64];
+	private long position = 0;
+	private boolean closed = false;
+
+	//every entry is stamped with the time the writer was made
+	public ZipWriter(OutputStream out){
+		this.out = out;
+		Calendar now = Calendar.getInstance();
+		dosTime = now.get(Calendar.HOUR_OF_DAY) << 11 | now.get(Calendar.MINUTE) << 5 | now.get(Calendar.SECOND) >> 1;
+		dosDate = (now.get(Calendar.YEAR) - 1980) << 9 | (now.get(Calendar.MONTH) + 1) << 5 | now.get(Calendar.DAY_OF_MONTH);
+	}
+
+	/*******************************************/
+	// Write
+	/*******************************************/
+
+	public void write(Entry entry) throws IOException {
+		writeHeader(entry.name, entry.method, entry.crc32, entry.size, entry.dataLength);
+		writeBytes(entry.data, entry.dataLength);
+	}
+
+	//writes an entry whose dataLength bytes of already compressed data come from a stream, for entries
+	//too big to hold in memory. the crc32 and size are of the uncompressed data
+	public void write(String name, int method, long crc32, long size, long dataLength, InputStream data) throws IOException {
+		writeHeader(name, method, crc32, size, dataLength);
+		byte[] buffer = new byte[64 * 1024];
+		long left = dataLength;
+		while(left > 0){
+			int read = data.read(buffer, 0, (int)Math.min(buffer.length, left));
+			if(read < 0){
+				throw new IOException(name + " ended " + left + " bytes early");
+			}
+			writeBytes(buffer, read);
+			left -= read;
+		}
+	}
+
+	private void writeHeader(String entryName, int method, long crc32, long size, long dataLength) throws IOException {
+		if(closed){
+			throw new IOException("The archive is closed");
+		}
+		if(size >= maxInt || dataLength >= maxInt){
+			throw new IOException(entryName + " is too big for a ZIP entry");
+		}
+		byte[] name = entryName.getBytes(StandardCharsets.UTF_8);
+		written.add(new Written(name, method, crc32, size, dataLength, position));
+		int length = 0;
+		length = putInt(header, length, localHeaderSignature);
+		length = putShort(header, length, 20);
+		length = putShort(header, length, utf8Flag);
+		length = putShort(header, length, method);
+		length = putShort(header, length, dosTime);
+		length = putShort(header, length, dosDate);
+		length = putInt(header, length, (int)crc32);
+		length = putInt(header, length, (int)dataLength);
+		length = putInt(header, length, (int)size);
+		length = putShort(header, length, name.length);
+		length = putShort(header, length, 0);
+		writeBytes(header, length);
+		writeBytes(name, name.length);
+	}
+
+	//writes the central directory and closes the stream
+	public void close() throws IOException {
+		if(closed){
+			return;
+		}
+		closed = true;
+		long directoryStart = position;
+		for(Written w: written){
+			boolean zip64 = w.offset >= maxInt;
+			int length = 0;
+			length = putInt(header, length, centralHeaderSignature);
+			length = putShort(header, length, zip64 ? 45 : 20);
+			length = putShort(header, length, zip64 ? 45 : 20);
+			length = putShort(header, length, utf8Flag);
+			length = putShort(header, length, w.method);
+			length = putShort(header, length, dosTime);
+			length = putShort(header, length, dosDate);
+			length = putInt(header, length, (int)w.crc32);
+			length = putInt(header, length, (int)w.dataLength);
+			length = putInt(header, length, (int)w.size);
+			length = putShort(header, length, w.name.length);
+			length = putShort(header, length, zip64 ? 12 : 0);
+			length = putShort(header, length, 0);
+			length = putShort(header, length, 0);
+			length = putShort(header, length, 0);
+			length = putInt(header, length, 0);
+			length = putInt(header, length, zip64 ? (int)maxInt : (int)w.offset);
+			writeBytes(header, length);
+			writeBytes(w.name, w.name.length);
+			if(zip64){
+				length = 0;
+				length = putShort(header, length, zip64ExtraId);
+				length = putShort(header, length, 8);
+				length = putLong(header, length, w.offset);
+				writeBytes(header, length);
+			}
+		}
+		long directorySize = position - directoryStart;
+		int count = written.size();
+		boolean zip64 = count >= maxShort || directoryStart >= maxInt || directorySize >= maxInt;
+		if(zip64){
+			long zip64End = position;
+			int length = 0;
+			length = putInt(header, length, zip64EndSignature);
+			length = putLong(header, length, 44);
+			length = putShort(header, length, 45);
+			length = putShort(header, length, 45);
+			length = putInt(header, length, 0);
+			length = putInt(header, length, 0);
+			length = putLong(header, length, count);
+			length = putLong(header, length, count);
+			length = putLong(header, length, directorySize);
+			length = putLong(header, length, directoryStart);
+			writeBytes(header, length);
+			length = 0;
+			length = putInt(header, length, zip64LocatorSignature);
+			length = putInt(header, length, 0);
+			length = putLong(header, length, zip64End);
+			length = putInt(header, length, 1);
+			writeBytes(header, length);
+		}
+		int length = 0;
+		length = putInt(header, length, endSignature);
+		length = putShort(header, length, 0);
+		length = putShort(header, length, 0);
+		length = putShort(header, length, zip64 ? maxShort : count);
+		length = putShort(header, length, zip64 ? maxShort : count);
+		length = putInt(header, length, zip64 ? (int)maxInt : (int)directorySize);
+		length = putInt(header, length, zip64 ? (int)maxInt : (int)directoryStart);
+		length = putShort(header, length, 0);
+		writeBytes(header, length);
+		out.close();
+	}
+
+	//bytes written so far
+	public long getPosition(){
+		return position;
+	}
+	//entries written so far
+	public int getEntryCount(){
+		return written.size();
+	}
+
+	/*******************************************/
+	// Little Endian
+	/*******************************************/
+
+	private void writeBytes(byte[] bytes, int length) throws IOException {
+		out.write(bytes, 0, length);
+		position += length;
+	}
+
+	private static int putShort(byte[] b, int i, int value){
+		b[i] = (byte)value;
+		b[i+1] = (byte)(value >> 8);
+		return i + 2;
+	}
+
+	private static int putInt(byte[] b, int i, int value){
+		putShort(b, i, value);
+		return putShort(b, i + 2, value >> 16);
+	}
+
+	private static int putLong(byte[] b, int i, long value){
+		putInt(b, i, (int)value);
+		return putInt(b, i + 4, (int)(value >> 32));
+	}
+}
@@ -0,0 +1,400 @@
+package redbluerandomizer.library;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+import redbluerandomizer.RomProfile;
+import redbluerandomizer.io.RomFile;
+import redbluerandomizer.io.RomHeader;
+
+//an index of the Game Boy ROMs under some directories, built by probing just each file's header.
+//directories are walked in parallel on a fork-join pool, and the index is cached on disk so a rescan
+//only probes files whose size or modification time changed
+public class RomLibrary {
+
+	private static final int fileMagic = 0x52424C49; //"RBLI"
+	private static final int fileVersion = 1;
+	private static final String extension = ".gb";
+
+	//one ROM file
+	public static class Entry {
+		public final String path;
+		public final long size;
+		public final long lastModified;
+		public final String title;
+		public final int version;
+		public final int destination;
+		public final int headerChecksum;
+		public final int globalChecksum;
+		//-1 unless the scan computed it
+		public final long crc32;
+		//name of the matching RomProfile, empty if it isn't a known build
+		public final String profile;
+
+		Entry(String path, long size, long lastModified, String title, int version, int destination,
+				int headerChecksum, int globalChecksum, long crc32, String profile){
+			this.path = path;
+			this.size = size;
+			this.lastModified = lastModified;
+			this.title = title;
+			this.version = version;
+			this.destination = destination;
+			this.headerChecksum = headerChecksum;
+			this.globalChecksum = globalChecksum;
+			this.crc32 = crc32;
+			this.profile = profile;
+		}
+
+		public boolean isPokemonRedBlue(){
+			return title.equals("POKEMON RED") || title.equals("POKEMON BLUE");
+		}
+
+		@Override
+		public String toString(){
+			return path + ": " + (profile.isEmpty() ? title + " v" + version : profile) +
+					(crc32 < 0 ? "" : String.format(" CRC %08X", crc32));
+		}
+	}
+
+	private final File indexFile;
+	private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private boolean computeCrc = false;
+	private final AtomicInteger probed = new AtomicInteger();
+	private final AtomicInteger cached = new AtomicInteger();
+	private final AtomicInteger failed = new AtomicInteger();
+
+	//loads the cached index if there is one, indexFile may be null to not cache
+	public RomLibrary(File indexFile){
+		this.indexFile = indexFile;
+		if(indexFile != null && indexFile.isFile()){
+			try{
+				read(indexFile);
+			}
+			catch(IOException e){
+				//stale or damaged, everything gets probed again
+				entries.clear();
+			}
+		}
+	}
+
+	//default index location, ~/.redbluerandomizer/library.index
+	public static File getDefaultIndexFile(){
+		return new File(new File(System.getProperty("user.home"), ".redbluerandomizer"), "library.index");
+	}
+
+	/*******************************************/
+	// Scan
+	/*******************************************/
+
+	//scans the directories and returns every ROM in them sorted by path, entries for files under
+	//the directories that are gone are dropped from the index
+	public List<Entry> scan(List<File> directories){
+		final Map<String, Boolean> seen = new ConcurrentHashMap<String, Boolean>();
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try{
+			List<ScanDirectory> tasks = new ArrayList<ScanDirectory>();
+			for(File directory: directories){
+				tasks.add(new ScanDirectory(directory.getAbsoluteFile(), seen));
+			}
+			for(ScanDirectory task: tasks){
+				pool.execute(task);
+			}
+			for(ScanDirectory task: tasks){
+				task.join();
+			}
+		}
+		finally{
+			pool.shutdown();
+		}
+
+		List<Entry> found = new ArrayList<Entry>();
+		for(Entry entry: entries.values()){
+			if(seen.containsKey(entry.path)){
+				found.add(entry);
+			}
+			else if(isUnder(entry.path, directories)){
+				entries.remove(entry.path);
+			}
+		}
+		Collections.sort(found, new Comparator<Entry>() {
+			public int compare(Entry a, Entry b){
+				return a.path.compareTo(b.path);
+			}
+		});
+		return found;
+	}
+
+	private class ScanDirectory extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final File directory;
+		private final Map<String, Boolean> seen;
+
+		ScanDirectory(File directory, Map<String, Boolean> seen){
+			this.directory = directory;
+			this.seen = seen;
+		}
+
+		@Override
+		protected void compute(){
+			File[] files = directory.listFiles();
+			if(files == null){
+				return;
+			}
+			List<ScanDirectory> subdirectories = new ArrayList<ScanDirectory>();
+			for(File file: files){
+				if(file.isDirectory()){
+					ScanDirectory task = new ScanDirectory(file, seen);
+					task.fork();
+					subdirectories.add(task);
+				}
+				else if(isRomFile(file.getName())){
+					scanFile(file);
+					seen.put(file.getPath(), Boolean.TRUE);
+				}
+			}
+			for(ScanDirectory task: subdirectories){
+				task.join();
+			}
+		}
+	}
+
+	//probes a file unless the index already has it at the same size and time
+	private void scanFile(File file){
+		String path = file.getPath();
+		long size = file.length();
+		long lastModified = file.lastModified();
+		Entry old = entries.get(path);
+		if(old != null && old.size == size && old.lastModified == lastModified && (!computeCrc || old.crc32 >= 0)){
+			cached.incrementAndGet();
+			return;
+		}
+		try{
+			RomHeader header = RomHeader.probe(file);
+			long crc32 = computeCrc ? crc32(file) : -1;
+			RomProfile profile = crc32 >= 0 ? RomProfile.identify(header, crc32) : RomProfile.identify(header);
+			entries.put(path, new Entry(path, size, lastModified, header.title, header.version, header.destination,
+					header.headerChecksum, header.globalChecksum, crc32, profile == null ? "" : profile.name));
+			probed.incrementAndGet();
+		}
+		catch(IOException e){
+			//too small or unreadable, it isn't a ROM we can use
+			entries.remove(path);
+			failed.incrementAndGet();
+		}
+	}
+
+	private static long crc32(File file) throws IOException {
+		CRC32 crc = new CRC32();
+		crc.update(RomFile.map(file));
+		return crc.getValue();
+	}
+
+	private static boolean isRomFile(String name){
+		return name.regionMatches(true, name.length() - extension.length(), extension, 0, extension.length());
+	}
+
+	private static boolean isUnder(String path, List<File> directories){
+		for(File directory: directories){
+			if(path.startsWith(directory.getAbsolutePath() + File.separator)){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/*******************************************/
+	// File I/O
+	/*******************************************/
+
+	//writes the index, to a temp file first so a reader never sees half of it. the default index is shared by
+	//every process, so each save has its own temp file and replaces the index in one step, the last save wins
+	public void save() throws IOException {
+		if(indexFile == null){
+			return;
+		}
+		File directory = indexFile.getAbsoluteFile().getParentFile();
+		if(!directory.isDirectory() && !directory.mkdirs()){
+			throw new IOException("Could not create " + directory);
+		}
+		File temp = File.createTempFile(indexFile.getName(), ".tmp", directory);
+		DataOutputStream out;
+		try{
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+		}
+		catch(IOException e){
+			temp.delete();
+			throw e;
+		}
+		try{
+			List<Entry> snapshot = new ArrayList<Entry>(entries.values());
+			out.writeInt(fileMagic);
+			out.writeInt(fileVersion);
+			out.writeInt(snapshot.size());
+			for(Entry entry: snapshot){
+				out.writeUTF(entry.path);
+				out.writeLong(entry.size);
+				out.writeLong(entry.lastModified);
+				out.writeUTF(entry.title);
+				out.writeByte(entry.version);
+				out.writeByte(entry.destination);
+				out.writeByte(entry.headerChecksum);
+				out.writeShort(entry.globalChecksum);
+				out.writeLong(entry.crc32);
+				out.writeUTF(entry.profile);
+			}
+			out.close();
+		}
+		catch(IOException e){
+			//closing again after a failed close does nothing
+			out.close();
+			temp.delete();
+			throw e;
+		}
+		//never deletes the index first, a save that fails leaves the last good one in place
+		try{
+			try{
+				Files.move(temp.toPath(), indexFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			}
+			catch(AtomicMoveNotSupportedException e){
+				Files.move(temp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		catch(IOException e){
+			temp.delete();
+			throw new IOException("Could not write " + indexFile, e);
+		}
+	}
+
+	private void read(File file) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try{
+			if(in.readInt() != fileMagic || in.readInt() != fileVersion){
+				throw new IOException(file + " is not a ROM library index");
+			}
+			int count = in.readInt();
+			for(int i=0; i<count; i++){
+				String path = in.readUTF();
+				entries.put(path, new Entry(path, in.readLong(), in.readLong(), in.readUTF(), in.readUnsignedByte(),
+						in.readUnsignedByte(), in.readUnsignedByte(), in.readUnsignedShort(), in.readLong(), in.readUTF()));
+			}
+		}
+		finally{
+			in.close();
+		}
+	}
+
+	/*******************************************/
+	// Setters/Getters
+	/*******************************************/
+
+	public void setThreads(int threads){
+		this.threads = Math.max(1, threads);
+	}
+	public int getThreads(){
+		return threads;
+	}
+	//also reads every file in full for its CRC-32, so clean dumps can be told from hacks
+	public void setComputeCrc(boolean computeCrc){
+		this.computeCrc = computeCrc;
+	}
+	//files whose header was read by the scans so far
+	public int getProbed(){
+		return probed.get();
+	}
+	//files the index already had
+	public int getCached(){
+		return cached.get();
+	}
+	//files that couldn't be read as ROMs
+	public int getFailed(){
+		return failed.get();
+	}
+
+	/*******************************************/
+	// Command Line
+	/*******************************************/
+
+	public static void main(String[] args) throws IOException {
+		List<File> directories = new ArrayList<File>();
+		File indexFile = getDefaultIndexFile();
+		Integer threads = null;
+		boolean computeCrc = false;
+		boolean all = false;
+		for(int i=0; i<args.length; i++){
+			if(args[i].equals("--threads") && i + 1 < args.length){
+				threads = Integer.parseInt(args[++i]);
+			}
+			else if(args[i].equals("--index") && i + 1 < args.length){
+				indexFile = new File(args[++i]);
+			}
+			else if(args[i].equals("--crc")){
+				computeCrc = true;
+			}
+			else if(args[i].equals("--all")){
+				all = true;
+			}
+			else if(args[i].startsWith("--")){
+				System.err.println("Unknown option: " + args[i]);
+				printUsage();
+				return;
+			}
+			else{
+				directories.add(new File(args[i]));
+			}
+		}
+		if(directories.isEmpty()){
+			printUsage();
+			return;
+		}
+
+		RomLibrary library = new RomLibrary(indexFile);
+		if(threads != null){
+			library.setThreads(threads);
+		}
+		library.setComputeCrc(computeCrc);
+		long start = System.nanoTime();
+		List<Entry> found = library.scan(directories);
+		double seconds = (System.nanoTime() - start) / 1e9;
+		library.save();
+
+		int redBlue = 0;
+		for(Entry entry: found){
+			if(entry.isPokemonRedBlue()){
+				redBlue++;
+			}
+			if(all || entry.isPokemonRedBlue()){
+				System.out.println(entry);
+			}
+		}
+		System.out.println(String.format("%d ROMs, %d Red/Blue (%d probed, %d from the index, %d unreadable) on %d threads in %.2fs: %.0f files/sec",
+				found.size(), redBlue, library.getProbed(), library.getCached(), library.getFailed(), library.getThreads(), seconds, found.size() / seconds));
+	}
+
+	private static void printUsage(){
+		System.err.println("Usage: RomLibrary <directory>... [--crc] [--all] [--threads n] [--index file]\n" +
+				"  --crc    read every ROM in full for its CRC-32, to tell clean dumps from hacks\n" +
+				"  --all    list every ROM, not just Red/Blue");
+	}
+}
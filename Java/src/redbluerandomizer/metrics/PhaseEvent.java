@@ -0,0 +1,35 @@
+package redbluerandomizer.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+//one section of a randomization, shows up in JDK Flight Recorder recordings
+@Name("redbluerandomizer.Phase")
+@Label("Randomizer Phase")
+@Category("Red/Blue Randomizer")
+@Description("Randomizing one section of a ROM")
+public class PhaseEvent extends jdk.jfr.Event {
+
+	private static final EventType type = EventType.getEventType(PhaseEvent.class);
+
+	@Label("Phase")
+	public String phase;
+
+	@Label("Seed")
+	public long seed;
+
+	@Label("Slots Rewritten")
+	public int slotsRewritten;
+
+	@Label("RNG Draws")
+	public long rngDraws;
+
+	//whether any recording wants these events, checked before making one so randomizing allocates nothing
+	//while JFR is off
+	public static boolean isRecording(){
+		return type.isEnabled();
+	}
+}
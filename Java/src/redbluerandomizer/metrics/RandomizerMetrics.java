@@ -0,0 +1,178 @@
+package redbluerandomizer.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.ObjectName;
+
+import redbluerandomizer.Section;
+
+//process wide counters for every randomizer, cheap enough to leave on in batch and server runs.
+//registered as a JMX MXBean the first time it's used, the matching JFR events are PhaseEvent and RomIoEvent.
+public class RandomizerMetrics implements RandomizerMetricsMXBean {
+
+	public static final String objectName = "redbluerandomizer:type=RandomizerMetrics";
+	//bucket i holds durations under 2^i microseconds, the last one holds everything longer
+	public static final int bucketCount = 24;
+
+	private static final RandomizerMetrics instance = new RandomizerMetrics();
+
+	static{
+		try{
+			ManagementFactory.getPlatformMBeanServer().registerMBean(instance, new ObjectName(objectName));
+		}
+		catch(Exception e){
+			//already registered or no JMX, the counters still work
+		}
+	}
+
+	private final LongAdder randomizations = new LongAdder();
+	private final LongAdder rngDraws = new LongAdder();
+	private final LongAdder slotsRewritten = new LongAdder();
+	private final LongAdder bytesRead = new LongAdder();
+	private final LongAdder bytesWritten = new LongAdder();
+	private final LongAdder[] phaseCounts = new LongAdder[Section.COUNT];
+	private final LongAdder[] phaseNanos = new LongAdder[Section.COUNT];
+	private final AtomicLongArray phaseMaxNanos = new AtomicLongArray(Section.COUNT);
+	private final AtomicLongArray histograms = new AtomicLongArray(Section.COUNT * bucketCount);
+
+	private RandomizerMetrics(){
+		for(int i=0; i<Section.COUNT; i++){
+			phaseCounts[i] = new LongAdder();
+			phaseNanos[i] = new LongAdder();
+		}
+	}
+
+	public static RandomizerMetrics get(){
+		return instance;
+	}
+
+	/*******************************************/
+	// Recording
+	/*******************************************/
+
+	//a whole randomize() call, draws includes the ones for the 1-1 map
+	public void recordRandomization(long draws){
+		randomizations.increment();
+		rngDraws.add(draws);
+	}
+
+	public void recordPhase(int section, long nanos, int slots){
+		phaseCounts[section].increment();
+		phaseNanos[section].add(nanos);
+		slotsRewritten.add(slots);
+		long max = phaseMaxNanos.get(section);
+		while(nanos > max && !phaseMaxNanos.compareAndSet(section, max, nanos)){
+			max = phaseMaxNanos.get(section);
+		}
+		histograms.incrementAndGet(section * bucketCount + getBucket(nanos / 1000));
+	}
+
+	public void recordRead(long bytes){
+		bytesRead.add(bytes);
+	}
+
+	public void recordWrite(long bytes){
+		bytesWritten.add(bytes);
+	}
+
+	private static int getBucket(long micros){
+		return Math.min(bucketCount - 1, 64 - Long.numberOfLeadingZeros(micros));
+	}
+
+	/*******************************************/
+	// MXBean
+	/*******************************************/
+
+	public long getRandomizations(){
+		return randomizations.sum();
+	}
+	public long getRngDraws(){
+		return rngDraws.sum();
+	}
+	public long getSlotsRewritten(){
+		return slotsRewritten.sum();
+	}
+	public long getBytesRead(){
+		return bytesRead.sum();
+	}
+	public long getBytesWritten(){
+		return bytesWritten.sum();
+	}
+	public String[] getPhaseNames(){
+		return Section.names.clone();
+	}
+	public long[] getPhaseCounts(){
+		long[] counts = new long[Section.COUNT];
+		for(int i=0; i<Section.COUNT; i++){
+			counts[i] = phaseCounts[i].sum();
+		}
+		return counts;
+	}
+	public double[] getPhaseMeanMicros(){
+		double[] means = new double[Section.COUNT];
+		for(int i=0; i<Section.COUNT; i++){
+			long count = phaseCounts[i].sum();
+			means[i] = count == 0 ? 0 : phaseNanos[i].sum() / 1000.0 / count;
+		}
+		return means;
+	}
+	public long[] getPhaseMaxMicros(){
+		long[] max = new long[Section.COUNT];
+		for(int i=0; i<Section.COUNT; i++){
+			max[i] = phaseMaxNanos.get(i) / 1000;
+		}
+		return max;
+	}
+	public long[][] getPhaseHistograms(){
+		long[][] rows = new long[Section.COUNT][bucketCount];
+		for(int i=0; i<Section.COUNT; i++){
+			for(int j=0; j<bucketCount; j++){
+				rows[i][j] = histograms.get(i * bucketCount + j);
+			}
+		}
+		return rows;
+	}
+	public long[] getHistogramBucketMicros(){
+		long[] bounds = new long[bucketCount];
+		for(int i=0; i<bucketCount; i++){
+			bounds[i] = i == bucketCount - 1 ? Long.MAX_VALUE : 1L << i;
+		}
+		return bounds;
+	}
+
+	//resets are only roughly atomic, a randomization finishing at the same time may be half counted
+	public void reset(){
+		randomizations.reset();
+		rngDraws.reset();
+		slotsRewritten.reset();
+		bytesRead.reset();
+		bytesWritten.reset();
+		for(int i=0; i<Section.COUNT; i++){
+			phaseCounts[i].reset();
+			phaseNanos[i].reset();
+			phaseMaxNanos.set(i, 0);
+		}
+		for(int i=0; i<histograms.length(); i++){
+			histograms.set(i, 0);
+		}
+	}
+
+	@Override
+	public String toString(){
+		StringBuilder builder = new StringBuilder();
+		builder.append("randomizations ").append(getRandomizations())
+				.append(", rng draws ").append(getRngDraws())
+				.append(", slots rewritten ").append(getSlotsRewritten())
+				.append(", bytes read ").append(getBytesRead())
+				.append(", bytes written ").append(getBytesWritten()).append('\n');
+		double[] means = getPhaseMeanMicros();
+		long[] max = getPhaseMaxMicros();
+		long[] counts = getPhaseCounts();
+		for(int i=0; i<Section.COUNT; i++){
+			builder.append(String.format("%-8s %8d runs, mean %8.1fus, max %8dus%n", Section.getName(i), counts[i], means[i], max[i]));
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,22 @@
+package redbluerandomizer.metrics;
+
+//what RandomizerMetrics shows over JMX (jconsole, VisualVM, ...), all totals are since start up or the last reset
+public interface RandomizerMetricsMXBean {
+
+	long getRandomizations();
+	long getRngDraws();
+	long getSlotsRewritten();
+	long getBytesRead();
+	long getBytesWritten();
+
+	//per phase values are in Section order
+	String[] getPhaseNames();
+	long[] getPhaseCounts();
+	double[] getPhaseMeanMicros();
+	long[] getPhaseMaxMicros();
+	//one row per phase, bucket i counts durations under getHistogramBucketMicros()[i]
+	long[][] getPhaseHistograms();
+	long[] getHistogramBucketMicros();
+
+	void reset();
+}
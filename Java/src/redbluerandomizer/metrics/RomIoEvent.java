@@ -0,0 +1,25 @@
+package redbluerandomizer.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+//a ROM or patch read or written by the randomizer, shows up in JDK Flight Recorder recordings
+@Name("redbluerandomizer.RomIo")
+@Label("Randomizer ROM I/O")
+@Category("Red/Blue Randomizer")
+@Description("Reading or writing a ROM or patch file")
+public class RomIoEvent extends jdk.jfr.Event {
+
+	@Label("Path")
+	public String path;
+
+	@Label("Write")
+	public boolean write;
+
+	@Label("Bytes")
+	@DataAmount
+	public long bytes;
+}
@@ -0,0 +1,105 @@
+package redbluerandomizer.patch;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import redbluerandomizer.RedBlueRandomizer;
+
+//applies an IPS patch onto a base ROM
+public class IpsPatcher {
+
+	private IpsPatcher(){
+	}
+
+	//streams the patch onto rom, returns the patched ROM (a bigger copy if a record writes past the end)
+	public static byte[] apply(InputStream patch, byte[] rom) throws IOException {
+		byte[] header = new byte[IpsWriter.header.length];
+		readFully(patch, header, 0, header.length);
+		if(!Arrays.equals(header, IpsWriter.header)){
+			throw new IOException("Not an IPS patch");
+		}
+		while(true){
+			int offset = readInt(patch, 3);
+			if(offset == IpsWriter.eofOffset){
+				break;
+			}
+			int size = readInt(patch, 2);
+			if(size == 0){
+				//RLE record: 2 byte run length then the value to repeat
+				int length = readInt(patch, 2);
+				int value = readInt(patch, 1);
+				rom = ensureLength(rom, offset + length);
+				Arrays.fill(rom, offset, offset + length, (byte)value);
+			}
+			else{
+				rom = ensureLength(rom, offset + size);
+				readFully(patch, rom, offset, size);
+			}
+		}
+		//some patches truncate the ROM after the footer
+		int truncate = patch.read();
+		if(truncate != -1){
+			int length = (truncate << 16) | readInt(patch, 2);
+			if(length < rom.length){
+				rom = Arrays.copyOf(rom, length);
+			}
+		}
+		return rom;
+	}
+
+	private static byte[] ensureLength(byte[] rom, int length){
+		if(length > rom.length){
+			return Arrays.copyOf(rom, length);
+		}
+		return rom;
+	}
+
+	//reads a big endian number of the given byte count
+	private static int readInt(InputStream in, int bytes) throws IOException {
+		int value = 0;
+		for(int i=0; i<bytes; i++){
+			int b = in.read();
+			if(b == -1){
+				throw new EOFException("Unexpected end of IPS patch");
+			}
+			value = (value << 8) | b;
+		}
+		return value;
+	}
+
+	private static void readFully(InputStream in, byte[] buffer, int offset, int length) throws IOException {
+		while(length > 0){
+			int read = in.read(buffer, offset, length);
+			if(read == -1){
+				throw new EOFException("Unexpected end of IPS patch");
+			}
+			offset += read;
+			length -= read;
+		}
+	}
+
+	/*******************************************/
+	// Command Line
+	/*******************************************/
+
+	public static void main(String[] args) throws IOException {
+		if(args.length != 3){
+			System.err.println("Usage: IpsPatcher <base rom> <patch> <output rom>");
+			return;
+		}
+		RedBlueRandomizer randomizer = new RedBlueRandomizer();
+		randomizer.readRom(args[0]);
+		InputStream patch = new BufferedInputStream(new FileInputStream(args[1]));
+		try{
+			randomizer.loadRom(apply(patch, randomizer.getRom()));
+		}
+		finally{
+			patch.close();
+		}
+		randomizer.saveRom(args[2]);
+	}
+}
@@ -0,0 +1,54 @@
+package redbluerandomizer.patch;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+//writes the bytes in a RomDiff as an IPS patch
+public class IpsWriter {
+
+	public static final byte[] header = {'P', 'A', 'T', 'C', 'H'};
+	public static final byte[] footer = {'E', 'O', 'F'};
+	public static final int eofOffset = 0x454F46;
+	public static final int maxOffset = 0xFFFFFF;
+	public static final int maxRecordSize = 0xFFFF;
+
+	private IpsWriter(){
+	}
+
+	//writes a patch for the changes against base, runs of adjacent changes share a record
+	public static void write(OutputStream out, RomDiff diff, byte[] base) throws IOException {
+		out.write(header);
+		int i = 0;
+		while(i < diff.size()){
+			int first = i;
+			int start = diff.getOffset(i);
+			int end = start + 1;
+			i++;
+			while(i < diff.size() && diff.getOffset(i) == end && end - start < maxRecordSize - 1){
+				end++;
+				i++;
+			}
+			//a record at 0x454F46 would read as the footer, so start it one byte early with the base's byte
+			boolean padded = start == eofOffset;
+			if(padded){
+				start--;
+			}
+			if(start > maxOffset){
+				throw new IOException("Offset " + Integer.toHexString(start) + " is out of range for an IPS patch");
+			}
+			int size = end - start;
+			out.write(start >>> 16);
+			out.write(start >>> 8);
+			out.write(start);
+			out.write(size >>> 8);
+			out.write(size);
+			if(padded){
+				out.write(base[start]);
+			}
+			for(int j=first; j<i; j++){
+				out.write(diff.getValue(j));
+			}
+		}
+		out.write(footer);
+	}
+}
@@ -0,0 +1,60 @@
+package redbluerandomizer.patch;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+//the bytes a randomization changed, in offset order, small enough to keep instead of a whole ROM
+public class RomDiff {
+
+	private final int[] offsets;
+	private final byte[] values;
+
+	public RomDiff(int[] offsets, byte[] values){
+		if(offsets.length != values.length){
+			throw new IllegalArgumentException("Every offset needs a value");
+		}
+		this.offsets = offsets;
+		this.values = values;
+	}
+
+	/*******************************************/
+	// Output
+	/*******************************************/
+
+	//writes the changes onto a ROM
+	public void apply(byte[] rom){
+		for(int i=0; i<offsets.length; i++){
+			rom[offsets[i]] = values[i];
+		}
+	}
+
+	//streams the randomized ROM: the base with the changes swapped in, without copying the base
+	public void writeRom(OutputStream out, byte[] base) throws IOException {
+		int position = 0;
+		for(int i=0; i<offsets.length; i++){
+			out.write(base, position, offsets[i] - position);
+			out.write(values[i]);
+			position = offsets[i] + 1;
+		}
+		out.write(base, position, base.length - position);
+	}
+
+	//writes the changes as an IPS patch against base
+	public void writeIps(OutputStream out, byte[] base) throws IOException {
+		IpsWriter.write(out, this, base);
+	}
+
+	/*******************************************/
+	// Setters/Getters
+	/*******************************************/
+
+	public int size(){
+		return offsets.length;
+	}
+	public int getOffset(int i){
+		return offsets[i];
+	}
+	public byte getValue(int i){
+		return values[i];
+	}
+}
@@ -0,0 +1,33 @@
+package redbluerandomizer.rng;
+
+import java.util.random.RandomGenerator;
+import java.util.random.RandomGeneratorFactory;
+
+//any of the JDK's named algorithms (L64X128MixRandom, Xoshiro256PlusPlus, SplittableRandom...), a new generator
+//is made from the factory for every reseed. the algorithms are fixed by name, so a seed gives the same numbers
+//on any JDK that has them
+public class GeneratorSource extends RandomSource {
+
+	private final RandomGeneratorFactory<RandomGenerator> factory;
+	private RandomGenerator generator;
+
+	public GeneratorSource(RandomGeneratorFactory<RandomGenerator> factory){
+		this.factory = factory;
+		reseed(0, 0);
+	}
+
+	@Override
+	public void reseed(long seed, int stream){
+		generator = factory.create(streamSeed(seed, stream));
+	}
+
+	@Override
+	protected int generateInt(int bound){
+		return generator.nextInt(bound);
+	}
+
+	@Override
+	protected double generateDouble(){
+		return generator.nextDouble();
+	}
+}
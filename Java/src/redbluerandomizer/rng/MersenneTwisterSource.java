@@ -0,0 +1,145 @@
+package redbluerandomizer.rng;
+
+//MT19937 without the locking, the default backend. gives exactly the numbers ec.util.MersenneTwister gives
+//for the same init key (init_by_array, nextInt(n) the way java.util.Random does it, nextDouble from 53 bits),
+//so seeds randomized before there was a choice of backend still give the same ROMs. the state array is kept
+//and reseeded in place where MersenneTwister.setSeed allocates a new one every time
+public class MersenneTwisterSource extends RandomSource {
+
+	private static final int N = 624;
+	private static final int M = 397;
+	private static final int MATRIX_A = 0x9908B0DF;
+	private static final int UPPER_MASK = 0x80000000;
+	private static final int LOWER_MASK = 0x7FFFFFFF;
+
+	private final int[] mt = new int[N];
+	private final int[] key = new int[3];
+	private int mti;
+
+	public MersenneTwisterSource(){
+		reseed(0, 0);
+	}
+
+	//the key is the low and high halves of the seed and the stream id
+	@Override
+	public void reseed(long seed, int stream){
+		key[0] = (int)seed;
+		key[1] = (int)(seed >>> 32);
+		key[2] = stream;
+		initByArray(key);
+	}
+
+	/*******************************************/
+	// Generator
+	/*******************************************/
+
+	private void initGenrand(int s){
+		mt[0] = s;
+		for(mti=1; mti<N; mti++){
+			mt[mti] = 1812433253 * (mt[mti-1] ^ (mt[mti-1] >>> 30)) + mti;
+		}
+	}
+
+	private void initByArray(int[] initKey){
+		initGenrand(19650218);
+		int i = 1;
+		int j = 0;
+		for(int k=Math.max(N, initKey.length); k>0; k--){
+			mt[i] = (mt[i] ^ ((mt[i-1] ^ (mt[i-1] >>> 30)) * 1664525)) + initKey[j] + j;
+			i++;
+			j++;
+			if(i >= N){
+				mt[0] = mt[N-1];
+				i = 1;
+			}
+			if(j >= initKey.length){
+				j = 0;
+			}
+		}
+		for(int k=N-1; k>0; k--){
+			mt[i] = (mt[i] ^ ((mt[i-1] ^ (mt[i-1] >>> 30)) * 1566083941)) - i;
+			i++;
+			if(i >= N){
+				mt[0] = mt[N-1];
+				i = 1;
+			}
+		}
+		mt[0] = UPPER_MASK;
+	}
+
+	//generates the next N words at once
+	private void twist(){
+		int kk;
+		int y;
+		for(kk=0; kk<N-M; kk++){
+			y = (mt[kk] & UPPER_MASK) | (mt[kk+1] & LOWER_MASK);
+			mt[kk] = mt[kk+M] ^ (y >>> 1) ^ ((y & 1) * MATRIX_A);
+		}
+		for(; kk<N-1; kk++){
+			y = (mt[kk] & UPPER_MASK) | (mt[kk+1] & LOWER_MASK);
+			mt[kk] = mt[kk+(M-N)] ^ (y >>> 1) ^ ((y & 1) * MATRIX_A);
+		}
+		y = (mt[N-1] & UPPER_MASK) | (mt[0] & LOWER_MASK);
+		mt[N-1] = mt[M-1] ^ (y >>> 1) ^ ((y & 1) * MATRIX_A);
+		mti = 0;
+	}
+
+	private int next32(){
+		if(mti >= N){
+			twist();
+		}
+		int y = mt[mti++];
+		y ^= y >>> 11;
+		y ^= (y << 7) & 0x9D2C5680;
+		y ^= (y << 15) & 0xEFC60000;
+		y ^= y >>> 18;
+		return y;
+	}
+
+	/*******************************************/
+	// Draws
+	/*******************************************/
+
+	//java.util.Random's bounded int from 31 bits: a multiply for powers of 2, otherwise the remainder
+	//with the bits past the last whole multiple of bound rejected
+	@Override
+	protected int generateInt(int bound){
+		if((bound & -bound) == bound){
+			return (int)((bound * (long)(next32() >>> 1)) >> 31);
+		}
+		int bits;
+		int value;
+		do{
+			bits = next32() >>> 1;
+			value = bits % bound;
+		}while(bits - value + (bound - 1) < 0);
+		return value;
+	}
+
+	@Override
+	protected double generateDouble(){
+		long high = next32() >>> 6;
+		long low = next32() >>> 5;
+		return ((high << 27) + low) / (double)(1L << 53);
+	}
+
+	//the same draws as generateInt with the power of 2 test made once for the whole buffer
+	@Override
+	protected void generateInts(int[] buffer, int count, int bound){
+		if((bound & -bound) == bound){
+			for(int i=0; i<count; i++){
+				buffer[i] = (int)((bound * (long)(next32() >>> 1)) >> 31);
+			}
+			return;
+		}
+		for(int i=0; i<count; i++){
+			int bits;
+			int value;
+			do{
+				bits = next32() >>> 1;
+				value = bits % bound;
+			}while(bits - value + (bound - 1) < 0);
+			buffer[i] = value;
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package redbluerandomizer.rng;
+
+import java.util.random.RandomGenerator;
+import java.util.random.RandomGeneratorFactory;
+
+//a named kind of RandomSource. the name is part of the options next to the seed, a seed only gives the same
+//ROM again with the same backend
+public abstract class RandomBackend {
+
+	//ec.util.MersenneTwister's numbers, what every seed gave before there was a choice
+	public static final RandomBackend MERSENNE_TWISTER = new RandomBackend("mt") {
+		public RandomSource create(){
+			return new MersenneTwisterSource();
+		}
+	};
+
+	public static final RandomBackend XOSHIRO = new RandomBackend("xoshiro") {
+		public RandomSource create(){
+			return new XoshiroSource();
+		}
+	};
+
+	public static final RandomBackend DEFAULT = MERSENNE_TWISTER;
+
+	private final String name;
+
+	private RandomBackend(String name){
+		this.name = name;
+	}
+
+	//a new source seeded with seed 0 and stream 0
+	public abstract RandomSource create();
+
+	public String getName(){
+		return name;
+	}
+
+	@Override
+	public String toString(){
+		return name;
+	}
+
+	/*******************************************/
+	// Lookup
+	/*******************************************/
+
+	//mt, xoshiro, or the name of one of the JDK's random algorithms. throws IllegalArgumentException for
+	//anything else, and for algorithms that can't be seeded (SecureRandom)
+	public static RandomBackend forName(String name){
+		if(name.equals(MERSENNE_TWISTER.name)){
+			return MERSENNE_TWISTER;
+		}
+		if(name.equals(XOSHIRO.name)){
+			return XOSHIRO;
+		}
+		final RandomGeneratorFactory<RandomGenerator> factory;
+		try{
+			factory = RandomGeneratorFactory.of(name);
+		}
+		catch(IllegalArgumentException e){
+			throw new IllegalArgumentException("Unknown RNG " + name + ", expected " + getNames());
+		}
+		if(factory.isStochastic() || factory.isDeprecated()){
+			throw new IllegalArgumentException(name + " can't give the same numbers for a seed");
+		}
+		return new RandomBackend(name) {
+			public RandomSource create(){
+				return new GeneratorSource(factory);
+			}
+		};
+	}
+
+	//for usage messages
+	public static String getNames(){
+		return MERSENNE_TWISTER.name + ", " + XOSHIRO.name + " or a java.util.random algorithm like L64X128MixRandom";
+	}
+}
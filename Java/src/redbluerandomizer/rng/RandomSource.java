@@ -0,0 +1,79 @@
+package redbluerandomizer.rng;
+
+//a reseedable stream of random numbers for the randomizer. unlike java.util.Random nothing here is synchronized,
+//each stream belongs to one randomizer on one thread. a backend only has to supply bounded ints and doubles,
+//the draw counting for the metrics is done here: one per value, a nextInt that rejects and retries is still one
+public abstract class RandomSource {
+
+	private long draws = 0;
+
+	//restarts the stream at the start of its sequence for a seed and stream id, the same pair always
+	//gives the same sequence and different streams of one seed don't depend on each other's draws
+	public abstract void reseed(long seed, int stream);
+
+	//uniform int in [0, bound), bound must be positive
+	protected abstract int generateInt(int bound);
+
+	//uniform double in [0, 1)
+	protected abstract double generateDouble();
+
+	/*******************************************/
+	// Draws
+	/*******************************************/
+
+	public final int nextInt(int bound){
+		draws++;
+		return generateInt(bound);
+	}
+
+	public final double nextDouble(){
+		draws++;
+		return generateDouble();
+	}
+
+	//fills the first count entries of buffer with ints in [0, bound), the same values count calls to nextInt would
+	//give, so a caller can draw a whole section into a buffer it keeps and a backend can generate them in one loop
+	public final void fill(int[] buffer, int count, int bound){
+		if(count < 0 || count > buffer.length){
+			throw new IllegalArgumentException("Can't fill " + count + " of " + buffer.length);
+		}
+		if(bound <= 0){
+			throw new IllegalArgumentException("bound must be positive");
+		}
+		draws += count;
+		generateInts(buffer, count, bound);
+	}
+
+	//one value at a time unless the backend has something quicker
+	protected void generateInts(int[] buffer, int count, int bound){
+		for(int i=0; i<count; i++){
+			buffer[i] = generateInt(bound);
+		}
+	}
+
+	/*******************************************/
+	// Setters/Getters
+	/*******************************************/
+
+	//total draws since the source was created, reseeding doesn't reset it
+	public long getDraws(){
+		return draws;
+	}
+
+	/*******************************************/
+	// Support
+	/*******************************************/
+
+	//SplitMix64's finalizer, for backends that turn the seed and stream id into a state of their own
+	protected static long mix64(long z){
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	//one 64 bit value for a seed and stream, the seed is mixed before the stream is added so nearby
+	//seeds and stream ids never line up
+	protected static long streamSeed(long seed, int stream){
+		return mix64(mix64(seed) + 0x9E3779B97F4A7C15L * (stream + 1));
+	}
+}
@@ -0,0 +1,62 @@
+package redbluerandomizer.rng;
+
+//xoshiro256** (Blackman and Vigna), four longs of state and a handful of shifts per draw. the state for a
+//seed and stream comes from SplitMix64, so reseeding is a few multiplies and never allocates
+public class XoshiroSource extends RandomSource {
+
+	private long s0;
+	private long s1;
+	private long s2;
+	private long s3;
+
+	public XoshiroSource(){
+		reseed(0, 0);
+	}
+
+	@Override
+	public void reseed(long seed, int stream){
+		long x = streamSeed(seed, stream);
+		s0 = mix64(x += 0x9E3779B97F4A7C15L);
+		s1 = mix64(x += 0x9E3779B97F4A7C15L);
+		s2 = mix64(x += 0x9E3779B97F4A7C15L);
+		s3 = mix64(x + 0x9E3779B97F4A7C15L);
+	}
+
+	/*******************************************/
+	// Generator
+	/*******************************************/
+
+	private long nextLong(){
+		long result = Long.rotateLeft(s1 * 5, 7) * 9;
+		long t = s1 << 17;
+		s2 ^= s0;
+		s3 ^= s1;
+		s1 ^= s2;
+		s0 ^= s3;
+		s2 ^= t;
+		s3 = Long.rotateLeft(s3, 45);
+		return result;
+	}
+
+	/*******************************************/
+	// Draws
+	/*******************************************/
+
+	//Lemire's multiply and shift on the high 32 bits, a division only on the rare draw that might be biased
+	@Override
+	protected int generateInt(int bound){
+		long product = (nextLong() >>> 32) * bound;
+		if((product & 0xFFFFFFFFL) < bound){
+			long threshold = (0x100000000L - bound) % bound;
+			while((product & 0xFFFFFFFFL) < threshold){
+				product = (nextLong() >>> 32) * bound;
+			}
+		}
+		return (int)(product >>> 32);
+	}
+
+	@Override
+	protected double generateDouble(){
+		return (nextLong() >>> 11) * 0x1.0p-53;
+	}
+}
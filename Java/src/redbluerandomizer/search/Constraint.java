@@ -0,0 +1,145 @@
+package redbluerandomizer.search;
+
+import redbluerandomizer.RedBlueRandomizer;
+import redbluerandomizer.Section;
+import redbluerandomizer.SlotIndex;
+
+//something a seed has to do: put one of a set of pokemon somewhere (required), never put them there (forbidden)
+//or only put them there (every slot).
+//"somewhere" is a section, optionally narrowed to one wild area / trainer party, or one slot of the title screen / starters.
+//constraints are immutable and shared between search threads, the per seed state lives in SeedSearch's matcher
+public class Constraint {
+
+	public final int section;
+	//wild area or trainer party, or slot within the title screen and starters, -1 for the whole section
+	public final int position;
+	public final boolean forbidden;
+	//every slot it covers has to be one of the pokemon, not just one of them
+	public final boolean every;
+	private final long[] pokemon;
+	private final String text;
+
+	public Constraint(int section, int position, long[] pokemon, boolean forbidden, String text){
+		this(section, position, pokemon, forbidden, false, text);
+	}
+
+	public Constraint(int section, int position, long[] pokemon, boolean forbidden, boolean every, String text){
+		if(forbidden && every){
+			throw new IllegalArgumentException("A constraint can't be both forbidden and on every slot");
+		}
+		this.section = section;
+		this.position = position;
+		this.pokemon = pokemon.clone();
+		this.forbidden = forbidden;
+		this.every = every;
+		this.text = text;
+	}
+
+	/*******************************************/
+	// Matching
+	/*******************************************/
+
+	//whether the constraint looks at a slot
+	public boolean covers(SlotIndex slots, int slot){
+		if(position < 0){
+			return true;
+		}
+		if(section == Section.TITLE_SCREEN || section == Section.PLAYER_STARTERS){
+			return slot - slots.getSectionStart(section) == position;
+		}
+		return slots.getGroup(slot) == position;
+	}
+
+	//whether a pokemon is one of the ones the constraint is about
+	public boolean matches(int index){
+		return (pokemon[index >>> 6] & (1L << index)) != 0;
+	}
+
+	/*******************************************/
+	// Parsing
+	/*******************************************/
+
+	public static final String syntax =
+			"  [!]<section>[:n]=<pokemon>  or  <section>[:n]==<pokemon>\n" +
+			"    section is title, starter, wild or trainer, n picks one wild area / trainer party (or slot for title and starter)\n" +
+			"    pokemon is a name (Dratini, MrMime), an index (0x83) or legendary, ! means it must not appear\n" +
+			"    and == means every slot there has to be one\n" +
+			"    e.g. starter=Dratini  !wild=legendary  wild:0=Mewtwo  trainer:12==legendary\n";
+
+	//parses the syntax above, names are looked up in the randomizer's tables
+	public static Constraint parse(String text, RedBlueRandomizer r){
+		String spec = text;
+		boolean forbidden = spec.startsWith("!");
+		if(forbidden){
+			spec = spec.substring(1);
+		}
+		int equals = spec.indexOf('=');
+		if(equals < 0){
+			throw new IllegalArgumentException("Expected <section>=<pokemon> in " + text);
+		}
+		String where = spec.substring(0, equals);
+		String what = spec.substring(equals + 1);
+		boolean every = what.startsWith("=");
+		if(every){
+			if(forbidden){
+				throw new IllegalArgumentException("! and == can't be used together in " + text);
+			}
+			what = what.substring(1);
+		}
+
+		int position = -1;
+		int colon = where.indexOf(':');
+		if(colon >= 0){
+			position = Integer.parseInt(where.substring(colon + 1));
+			where = where.substring(0, colon);
+		}
+		int section = -1;
+		for(int i=0; i<Section.COUNT; i++){
+			if(Section.getName(i).equalsIgnoreCase(where) || (Section.getName(i) + "s").equalsIgnoreCase(where)){
+				section = i;
+			}
+		}
+		if(section < 0){
+			throw new IllegalArgumentException("Unknown section " + where + " in " + text);
+		}
+
+		long[] pokemon = new long[4];
+		if(what.equalsIgnoreCase("legendary") || what.equalsIgnoreCase("legendaries")){
+			for(int index: r.legendaryIndices){
+				pokemon[index >>> 6] |= 1L << index;
+			}
+		}
+		else{
+			int index = findPokemon(what, r);
+			pokemon[index >>> 6] |= 1L << index;
+		}
+		return new Constraint(section, position, pokemon, forbidden, every, text);
+	}
+
+	//a pokemon index from a name (case, spaces and punctuation ignored) or a 0x index
+	private static int findPokemon(String name, RedBlueRandomizer r){
+		if(name.startsWith("0x") || name.startsWith("0X")){
+			int index = Integer.parseInt(name.substring(2), 16);
+			if(index < 0 || index > 0xFF){
+				throw new IllegalArgumentException("Index out of range: " + name);
+			}
+			return index;
+		}
+		String key = normalize(name);
+		for(int i=0; i<r.names.length; i++){
+			if(normalize(r.names[i]).equals(key)){
+				return r.indices[i];
+			}
+		}
+		throw new IllegalArgumentException("Unknown pokemon " + name);
+	}
+
+	private static String normalize(String name){
+		return name.toLowerCase().replaceAll("[^a-z0-9]", "");
+	}
+
+	@Override
+	public String toString(){
+		return text;
+	}
+}
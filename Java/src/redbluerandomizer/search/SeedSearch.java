@@ -0,0 +1,279 @@
+package redbluerandomizer.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import redbluerandomizer.RandomizerOptions;
+import redbluerandomizer.RedBlueRandomizer;
+import redbluerandomizer.Section;
+import redbluerandomizer.SlotIndex;
+import redbluerandomizer.SlotVisitor;
+
+//finds seeds whose randomization meets a set of constraints, without randomizing any ROMs.
+//each seed is replayed (RedBlueRandomizer.replay) for just the sections the constraints look at, and stops at
+//the first slot that breaks one. ranges of seeds are split across a fork-join pool, every pool thread has its
+//own randomizer that's loaded once, so nothing is copied per seed
+public class SeedSearch {
+
+	//seeds per fork-join leaf, big enough that splitting doesn't show up next to the replays
+	private static final int chunkSize = 4096;
+
+	private final byte[] baseRom;
+	private final SlotIndex slots;
+	private final RandomizerOptions options;
+	private final Constraint[] constraints;
+	private final boolean[] sectionsUsed = new boolean[Section.COUNT];
+
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private int maxResults = 10;
+	private final AtomicLong seedsChecked = new AtomicLong();
+
+	private final ThreadLocal<Matcher> matchers = new ThreadLocal<Matcher>() {
+		@Override
+		protected Matcher initialValue(){
+			return new Matcher();
+		}
+	};
+
+	public SeedSearch(byte[] baseRom, SlotIndex slots, RandomizerOptions options, List<Constraint> constraints){
+		this.baseRom = baseRom;
+		this.slots = slots;
+		this.options = options;
+		this.constraints = constraints.toArray(new Constraint[constraints.size()]);
+		for(Constraint constraint: constraints){
+			sectionsUsed[constraint.section] = true;
+		}
+	}
+
+	/*******************************************/
+	// Search
+	/*******************************************/
+
+	//checks seeds first .. first + count - 1 and returns the matching ones in order. the search stops once
+	//maxResults are found, since the range is split up those aren't necessarily the lowest matches in it
+	public List<Long> search(long first, long count){
+		final ConcurrentSkipListSet<Long> results = new ConcurrentSkipListSet<Long>();
+		final AtomicBoolean done = new AtomicBoolean(maxResults <= 0);
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try{
+			pool.invoke(new SearchRange(first, count, results, done));
+		}
+		finally{
+			pool.shutdown();
+		}
+		List<Long> seeds = new ArrayList<Long>(results);
+		return seeds.size() > maxResults ? seeds.subList(0, maxResults) : seeds;
+	}
+
+	//whether a single seed meets every constraint
+	public boolean matches(long seed){
+		return matchers.get().matches(seed);
+	}
+
+	private class SearchRange extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final long first;
+		private final long count;
+		private final ConcurrentSkipListSet<Long> results;
+		private final AtomicBoolean done;
+
+		SearchRange(long first, long count, ConcurrentSkipListSet<Long> results, AtomicBoolean done){
+			this.first = first;
+			this.count = count;
+			this.results = results;
+			this.done = done;
+		}
+
+		@Override
+		protected void compute(){
+			if(count > chunkSize){
+				long half = count / 2;
+				invokeAll(new SearchRange(first, half, results, done),
+						new SearchRange(first + half, count - half, results, done));
+				return;
+			}
+			Matcher matcher = matchers.get();
+			long checked = 0;
+			for(long seed=first; seed<first + count && !done.get(); seed++){
+				if(matcher.matches(seed)){
+					results.add(seed);
+					if(results.size() >= maxResults){
+						done.set(true);
+					}
+				}
+				checked++;
+			}
+			seedsChecked.addAndGet(checked);
+		}
+	}
+
+	//replays seeds on one thread's randomizer, tracking which required constraints have been met
+	private class Matcher implements SlotVisitor {
+
+		private final RedBlueRandomizer randomizer = new RedBlueRandomizer();
+		private final boolean[] found = new boolean[constraints.length];
+		private int currentSection;
+
+		Matcher(){
+			options.applyTo(randomizer);
+			randomizer.loadRom(baseRom);
+			randomizer.setSlotIndex(slots);
+		}
+
+		boolean matches(long seed){
+			randomizer.setSeed(seed);
+			for(int i=0; i<found.length; i++){
+				found[i] = false;
+			}
+			currentSection = -1;
+			return randomizer.replay(this) && isRequiredFound(Section.COUNT);
+		}
+
+		public boolean visitsSection(int section){
+			return sectionsUsed[section];
+		}
+
+		public boolean visitSlot(int section, int slot, int pokemon){
+			//a required pokemon that didn't turn up in an earlier section fails the seed as soon as we move on
+			if(section != currentSection){
+				if(!isRequiredFound(section)){
+					return false;
+				}
+				currentSection = section;
+			}
+			for(int i=0; i<constraints.length; i++){
+				Constraint constraint = constraints[i];
+				if(constraint.section != section){
+					continue;
+				}
+				if(constraint.matches(pokemon)){
+					if(constraint.covers(slots, slot)){
+						if(constraint.forbidden){
+							return false;
+						}
+						found[i] = true;
+					}
+				}
+				else if(constraint.every && constraint.covers(slots, slot)){
+					return false;
+				}
+			}
+			return true;
+		}
+
+		//whether every required constraint in the sections before the given one has been met
+		private boolean isRequiredFound(int section){
+			for(int i=0; i<constraints.length; i++){
+				if(!constraints[i].forbidden && constraints[i].section < section && !found[i]){
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/*******************************************/
+	// Setters/Getters
+	/*******************************************/
+
+	public void setThreads(int threads){
+		this.threads = Math.max(1, threads);
+	}
+	public int getThreads(){
+		return threads;
+	}
+	public void setMaxResults(int maxResults){
+		this.maxResults = maxResults;
+	}
+	//seeds checked by every search so far
+	public long getSeedsChecked(){
+		return seedsChecked.get();
+	}
+
+	/*******************************************/
+	// Command Line
+	/*******************************************/
+
+	public static void main(String[] args) throws Exception {
+		if(args.length < 2){
+			printUsage();
+			return;
+		}
+		RedBlueRandomizer reader = new RedBlueRandomizer();
+		reader.readRom(args[0]);
+		if(!reader.isPokemonRedBlue()){
+			System.err.println("Warning: This doesn't look like a Pokemon Red or Blue ROM...");
+		}
+
+		RandomizerOptions options = new RandomizerOptions();
+		List<Constraint> constraints = new ArrayList<Constraint>();
+		long first = 0;
+		long count = 1000000;
+		Integer threads = null;
+		int maxResults = 10;
+		for(int i=1; i<args.length; i++){
+			if(args[i].equals("--from") && i + 1 < args.length){
+				first = Long.parseLong(args[++i]);
+			}
+			else if(args[i].equals("--count") && i + 1 < args.length){
+				count = Long.parseLong(args[++i]);
+			}
+			else if(args[i].equals("--threads") && i + 1 < args.length){
+				threads = Integer.parseInt(args[++i]);
+			}
+			else if(args[i].equals("--max-results") && i + 1 < args.length){
+				maxResults = Integer.parseInt(args[++i]);
+			}
+			else if(args[i].startsWith("--")){
+				if(!options.parseFlag(args[i])){
+					System.err.println("Unknown option: " + args[i]);
+					printUsage();
+					return;
+				}
+			}
+			else{
+				try{
+					constraints.add(Constraint.parse(args[i], reader));
+				}
+				catch(IllegalArgumentException e){
+					System.err.println(e.getMessage());
+					printUsage();
+					return;
+				}
+			}
+		}
+		if(constraints.isEmpty()){
+			System.err.println("No constraints given");
+			printUsage();
+			return;
+		}
+
+		SlotIndex slots = SlotIndex.load(reader, reader.getBaseRom(), SlotIndex.getDefaultCacheDirectory());
+		SeedSearch search = new SeedSearch(reader.getBaseRom(), slots, options, constraints);
+		if(threads != null){
+			search.setThreads(threads);
+		}
+		search.setMaxResults(maxResults);
+
+		long start = System.nanoTime();
+		List<Long> seeds = search.search(first, count);
+		double seconds = (System.nanoTime() - start) / 1e9;
+		for(long seed: seeds){
+			System.out.println(seed);
+		}
+		System.out.println(String.format("Found %d seeds, checked %d on %d threads in %.2fs: %.0f seeds/sec",
+				seeds.size(), search.getSeedsChecked(), search.getThreads(), seconds, search.getSeedsChecked() / seconds));
+	}
+
+	private static void printUsage(){
+		System.err.println("Usage: SeedSearch <base rom> [--from first seed] [--count n] [--threads n] [--max-results n] [options] <constraint>...\n" +
+				RandomizerOptions.getUsage() + "Constraints:\n" + Constraint.syntax);
+	}
+}
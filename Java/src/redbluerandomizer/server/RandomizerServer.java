@@ -0,0 +1,317 @@
+package redbluerandomizer.server;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import redbluerandomizer.RandomizerOptions;
+import redbluerandomizer.RedBlueRandomizer;
+import redbluerandomizer.SlotIndex;
+import redbluerandomizer.cache.ResultCache;
+import redbluerandomizer.io.RomHash;
+import redbluerandomizer.metrics.RandomizerMetrics;
+import redbluerandomizer.patch.RomDiff;
+import redbluerandomizer.rng.RandomBackend;
+
+//serves randomized ROMs and IPS patches over HTTP without the Swing UI.
+//the base ROM is read once; a fixed pool of randomizers (one per core) does the CPU work and each
+//request only keeps the few KB of changed bytes while its response streams the base with them swapped in.
+//results are cached by seed and options, so everyone in a race downloading the same seed costs one randomization.
+public class RandomizerServer {
+
+	public static final String usage =
+			"GET /randomize?seed=123&title=1&starters=1&wild=1&trainers=1&onetoone=1&nolegendaries=1&legendaryweight=0.1&rng=mt&format=rom|ips\n" +
+			"Every parameter is optional, a random seed is picked (and returned in X-Seed) when there isn't one.\n";
+
+	private final byte[] baseRom;
+	private final String romName;
+	private final String romHash;
+	private final ResultCache cache;
+	private final BlockingQueue<RedBlueRandomizer> randomizers;
+	private HttpServer server;
+	private ExecutorService executor;
+
+	public RandomizerServer(String baseRomPath, int workers, ResultCache cache) throws IOException {
+		RedBlueRandomizer reader = new RedBlueRandomizer();
+		reader.readRom(baseRomPath);
+		if(!reader.isPokemonRedBlue()){
+			System.err.println("Warning: This doesn't look like a Pokemon Red or Blue ROM...");
+		}
+		baseRom = reader.getBaseRom();
+		romName = new File(baseRomPath).getName().replaceFirst("(?i)\\.gb$", "");
+		romHash = RomHash.sha1(baseRom);
+		this.cache = cache;
+		SlotIndex slots = reader.getSlotIndex();
+		randomizers = new ArrayBlockingQueue<RedBlueRandomizer>(workers);
+		for(int i=0; i<workers; i++){
+			RedBlueRandomizer randomizer = new RedBlueRandomizer();
+			randomizer.loadRom(baseRom);
+			randomizer.setSlotIndex(slots);
+			randomizers.add(randomizer);
+		}
+	}
+
+	/*******************************************/
+	// Server
+	/*******************************************/
+
+	//listens on the loopback address only, it's a local service
+	public void start(int port) throws IOException {
+		start(InetAddress.getLoopbackAddress(), port);
+	}
+
+	//listens on one address, null for every interface
+	public void start(InetAddress address, int port) throws IOException {
+		server = HttpServer.create(new InetSocketAddress(address, port), 0);
+		executor = createExecutor();
+		server.setExecutor(executor);
+		server.createContext("/randomize", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				handleRandomize(exchange);
+			}
+		});
+		server.createContext("/stats", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				sendText(exchange, 200, cache.toString() + "\n" + RandomizerMetrics.get());
+			}
+		});
+		server.createContext("/", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				sendText(exchange, exchange.getRequestURI().getPath().equals("/") ? 200 : 404, usage);
+			}
+		});
+		server.start();
+	}
+
+	public void stop(){
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	//a virtual thread per request when the JDK has them (21+), otherwise a bounded pool of platform threads
+	private static ExecutorService createExecutor(){
+		try{
+			return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch(Exception e){
+			return Executors.newFixedThreadPool(256);
+		}
+	}
+
+	/*******************************************/
+	// Requests
+	/*******************************************/
+
+	private void handleRandomize(HttpExchange exchange) throws IOException {
+		try{
+			if(!exchange.getRequestMethod().equals("GET")){
+				sendText(exchange, 405, usage);
+				return;
+			}
+			Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+			RandomizerOptions options;
+			long seed;
+			boolean patch;
+			try{
+				options = parseOptions(query);
+				seed = query.containsKey("seed") ? Long.parseLong(query.get("seed")) : System.nanoTime();
+				String format = query.containsKey("format") ? query.get("format") : "rom";
+				if(!format.equals("rom") && !format.equals("ips")){
+					throw new IllegalArgumentException("format must be rom or ips");
+				}
+				patch = format.equals("ips");
+			}
+			catch(IllegalArgumentException e){
+				sendText(exchange, 400, e.getMessage() + "\n\n" + usage);
+				return;
+			}
+
+			String key = ResultCache.key(romHash, options, seed);
+			RomDiff diff = cache.get(key);
+			boolean hit = diff != null;
+			if(!hit){
+				diff = randomize(options, seed);
+				cache.put(key, diff);
+			}
+
+			String fileName = romName + "-" + seed + (patch ? ".ips" : ".gb");
+			exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+			exchange.getResponseHeaders().set("Content-Disposition", "attachment; filename=\"" + fileName + "\"");
+			exchange.getResponseHeaders().set("X-Seed", Long.toString(seed));
+			exchange.getResponseHeaders().set("X-Options", options.toString());
+			exchange.getResponseHeaders().set("X-Cache", hit ? "HIT" : "MISS");
+			exchange.sendResponseHeaders(200, patch ? 0 : baseRom.length);
+			OutputStream body = new BufferedOutputStream(exchange.getResponseBody(), 64 * 1024);
+			if(patch){
+				diff.writeIps(body, baseRom);
+			}
+			else{
+				diff.writeRom(body, baseRom);
+			}
+			body.close();
+		}
+		catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			exchange.close();
+		}
+		catch(IOException e){
+			//the client went away
+			exchange.close();
+		}
+		catch(RuntimeException e){
+			e.printStackTrace();
+			//once the 200 and its length are out there's no way to tell the client, cutting it short is all that's left
+			if(exchange.getResponseCode() == -1){
+				try{
+					sendText(exchange, 500, "An error occurred during randomization.\n");
+				}
+				catch(IOException closed){
+					exchange.close();
+				}
+			}
+			else{
+				exchange.close();
+			}
+		}
+	}
+
+	//randomizes on a pooled randomizer and keeps just the changed bytes
+	private RomDiff randomize(RandomizerOptions options, long seed) throws InterruptedException {
+		RedBlueRandomizer randomizer = randomizers.take();
+		try{
+			options.applyTo(randomizer);
+			randomizer.setSeed(seed);
+			randomizer.randomize();
+			return randomizer.getRomView().toDiff();
+		}
+		finally{
+			randomizers.add(randomizer);
+		}
+	}
+
+	private static RandomizerOptions parseOptions(Map<String, String> query){
+		RandomizerOptions options = new RandomizerOptions();
+		options.titleScreen = parseBoolean(query, "title");
+		options.playerStarters = parseBoolean(query, "starters");
+		options.wildAreas = parseBoolean(query, "wild");
+		options.trainers = parseBoolean(query, "trainers");
+		options.oneToOne = parseBoolean(query, "onetoone");
+		options.noLegendaries = parseBoolean(query, "nolegendaries");
+		if(query.containsKey("legendaryweight")){
+			options.legendaryWeight = Double.parseDouble(query.get("legendaryweight"));
+			if(!(options.legendaryWeight >= 0) || Double.isInfinite(options.legendaryWeight)){
+				throw new IllegalArgumentException("legendaryweight must be 0 or more");
+			}
+		}
+		if(query.containsKey("rng")){
+			options.rng = RandomBackend.forName(query.get("rng"));
+		}
+		return options;
+	}
+
+	private static boolean parseBoolean(Map<String, String> query, String name){
+		String value = query.get(name);
+		if(value == null || value.equals("0") || value.equalsIgnoreCase("false")){
+			return false;
+		}
+		if(value.isEmpty() || value.equals("1") || value.equalsIgnoreCase("true")){
+			return true;
+		}
+		throw new IllegalArgumentException(name + " must be 0/1 or true/false");
+	}
+
+	private static Map<String, String> parseQuery(String query) throws UnsupportedEncodingException {
+		Map<String, String> values = new HashMap<String, String>();
+		if(query == null){
+			return values;
+		}
+		for(String pair: query.split("&")){
+			if(pair.isEmpty()){
+				continue;
+			}
+			int equals = pair.indexOf('=');
+			String name = equals < 0 ? pair : pair.substring(0, equals);
+			String value = equals < 0 ? "" : pair.substring(equals + 1);
+			values.put(URLDecoder.decode(name, "UTF-8").toLowerCase(), URLDecoder.decode(value, "UTF-8"));
+		}
+		return values;
+	}
+
+	private static void sendText(HttpExchange exchange, int status, String text) throws IOException {
+		byte[] body = text.getBytes("UTF-8");
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		exchange.sendResponseHeaders(status, body.length);
+		OutputStream out = exchange.getResponseBody();
+		out.write(body);
+		out.close();
+	}
+
+	/*******************************************/
+	// Command Line
+	/*******************************************/
+
+	public static void main(String[] args) throws IOException {
+		if(args.length < 1){
+			printUsage();
+			return;
+		}
+		int port = 8080;
+		InetAddress bind = InetAddress.getLoopbackAddress();
+		int workers = Runtime.getRuntime().availableProcessors();
+		long memoryMb = 64;
+		long diskMb = 1024;
+		File cacheDirectory = ResultCache.getDefaultCacheDirectory();
+		for(int i=1; i<args.length; i++){
+			if(args[i].equals("--port") && i + 1 < args.length){
+				port = Integer.parseInt(args[++i]);
+			}
+			else if(args[i].equals("--bind") && i + 1 < args.length){
+				String address = args[++i];
+				bind = address.equals("*") ? null : InetAddress.getByName(address);
+			}
+			else if(args[i].equals("--workers") && i + 1 < args.length){
+				workers = Math.max(1, Integer.parseInt(args[++i]));
+			}
+			else if(args[i].equals("--cache-mb") && i + 1 < args.length){
+				memoryMb = Long.parseLong(args[++i]);
+			}
+			else if(args[i].equals("--disk-cache-mb") && i + 1 < args.length){
+				diskMb = Long.parseLong(args[++i]);
+			}
+			else if(args[i].equals("--disk-cache") && i + 1 < args.length){
+				cacheDirectory = new File(args[++i]);
+			}
+			else{
+				System.err.println("Unknown option: " + args[i]);
+				printUsage();
+				return;
+			}
+		}
+		ResultCache cache = new ResultCache(memoryMb * 1024 * 1024, cacheDirectory, diskMb * 1024 * 1024);
+		RandomizerServer server = new RandomizerServer(args[0], workers, cache);
+		server.start(bind, port);
+		System.out.println("Serving randomized ROMs on " + (bind == null ? "every interface" : bind.getHostAddress()) + " port " + port +
+				" with " + workers + " randomizers");
+	}
+
+	private static void printUsage(){
+		System.err.println("Usage: RandomizerServer <base rom> [--port 8080] [--bind 127.0.0.1] [--workers n] [--cache-mb 64] [--disk-cache dir] [--disk-cache-mb 1024]\n" +
+				"  --bind is the address to listen on, the loopback address by default, * for every interface\n" +
+				"  --disk-cache-mb 0 turns off the disk cache (default directory ~/.redbluerandomizer/results)");
+	}
+}
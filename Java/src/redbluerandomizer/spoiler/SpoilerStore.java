@@ -0,0 +1,545 @@
+package redbluerandomizer.spoiler;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import redbluerandomizer.RedBlueRandomizer;
+import redbluerandomizer.RomView;
+import redbluerandomizer.SlotIndex;
+import redbluerandomizer.search.Constraint;
+
+//every slot's pokemon for any number of seeds, one byte per slot per seed, so questions like "which seeds put
+//Mewtwo in wild area 12" are a scan of a few columns instead of reading every ROM again.
+//the file is a header (base ROM hash, options and the slot index that says what each column is) and then
+//blocks of up to blockRows seeds, each block holding its seeds and then one column of rows bytes per slot.
+//seeds are only ever appended, a block cut short by a crash is ignored when the store is opened again
+public class SpoilerStore {
+
+	private static final int fileMagic = 0x52424353; //"RBCS"
+	private static final int fileVersion = 1;
+	private static final int blockMagic = 0x424C4B31; //"BLK1"
+	public static final int defaultBlockRows = 8192;
+
+	private final File file;
+	private final String romHash;
+	private final String options;
+	private final SlotIndex slots;
+	private final FileChannel channel;
+	private final List<Block> blocks = new ArrayList<Block>();
+	private long end;
+
+	//appending
+	private final int blockRows;
+	private long[] pendingSeeds;
+	private byte[] pendingColumns;
+	private int pendingRows = 0;
+
+	//where a block's seeds and columns are in the file
+	private static class Block {
+		final long position;
+		final int rows;
+
+		Block(long position, int rows){
+			this.position = position;
+			this.rows = rows;
+		}
+	}
+
+	private SpoilerStore(File file, FileChannel channel, String romHash, String options, SlotIndex slots, int blockRows){
+		this.file = file;
+		this.channel = channel;
+		this.romHash = romHash;
+		this.options = options;
+		this.slots = slots;
+		this.blockRows = blockRows;
+	}
+
+	/*******************************************/
+	// Open
+	/*******************************************/
+
+	//opens a store to add seeds to, creating it if it isn't there. an existing store has to be for the same
+	//ROM, options and slots since queries read every block the same way
+	public static SpoilerStore openForAppend(File file, String romHash, String options, SlotIndex slots) throws IOException {
+		if(file.isFile() && file.length() > 0){
+			SpoilerStore store = open(file, true);
+			if(!store.romHash.equals(romHash) || !store.options.equals(options) || store.slots.size() != slots.size()){
+				store.close();
+				throw new IOException(file + " holds seeds for a different ROM or options (" + store.options + ")");
+			}
+			return store;
+		}
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		SpoilerStore store = new SpoilerStore(file, channel, romHash, options, slots, defaultBlockRows);
+		ByteArrayOutputStream fields = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(fields);
+		out.writeUTF(romHash);
+		out.writeUTF(options);
+		slots.write(out);
+		out.flush();
+		ByteBuffer header = ByteBuffer.allocate(12 + fields.size());
+		header.putInt(fileMagic);
+		header.putInt(fileVersion);
+		header.putInt(fields.size());
+		header.put(fields.toByteArray());
+		header.flip();
+		store.writeFully(header, 0);
+		store.end = header.capacity();
+		return store;
+	}
+
+	//opens a store for queries
+	public static SpoilerStore open(File file) throws IOException {
+		return open(file, false);
+	}
+
+	private static SpoilerStore open(File file, boolean append) throws IOException {
+		FileChannel channel = append ? FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE) :
+				FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try{
+			ByteBuffer start = ByteBuffer.allocate(12);
+			while(start.hasRemaining() && channel.read(start, start.position()) >= 0){
+			}
+			start.flip();
+			if(start.remaining() < 12 || start.getInt() != fileMagic || start.getInt() != fileVersion){
+				throw new IOException(file + " is not a spoiler store");
+			}
+			int length = start.getInt();
+			if(length < 0 || 12L + length > channel.size()){
+				throw new IOException(file + " is damaged");
+			}
+			//the header is read in one go, the slot index alone is thousands of ints
+			ByteBuffer fields = ByteBuffer.allocate(length);
+			while(fields.hasRemaining() && channel.read(fields, 12 + fields.position()) >= 0){
+			}
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(fields.array()));
+			String romHash = in.readUTF();
+			String options = in.readUTF();
+			SlotIndex slots = SlotIndex.read(in, file.getPath());
+			SpoilerStore store = new SpoilerStore(file, channel, romHash, options, slots, defaultBlockRows);
+			store.end = 12 + length;
+			store.readBlocks();
+			if(append && channel.size() > store.end){
+				//drop a block a crash left half written
+				channel.truncate(store.end);
+			}
+			return store;
+		}
+		catch(IOException e){
+			channel.close();
+			throw e;
+		}
+	}
+
+	//walks the block headers, stopping at the first one that isn't whole
+	private void readBlocks() throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(8);
+		long size = channel.size();
+		while(end + 8 <= size){
+			header.clear();
+			readFully(header, end);
+			header.flip();
+			int magic = header.getInt();
+			int rows = header.getInt();
+			long length = 8 + rows * (8L + slots.size());
+			if(magic != blockMagic || rows <= 0 || end + length > size){
+				break;
+			}
+			blocks.add(new Block(end + 8, rows));
+			end += length;
+		}
+	}
+
+	/*******************************************/
+	// Append
+	/*******************************************/
+
+	//adds a seed's slots, read from a randomized ROM. thread safe, the seeds are written out a block at a time
+	public synchronized void append(long seed, RomView rom) throws IOException {
+		if(pendingSeeds == null){
+			pendingSeeds = new long[blockRows];
+			pendingColumns = new byte[blockRows * slots.size()];
+		}
+		pendingSeeds[pendingRows] = seed;
+		for(int slot=0, i=pendingRows; slot<slots.size(); slot++, i+=blockRows){
+			pendingColumns[i] = rom.get(slots.getOffset(slot));
+		}
+		pendingRows++;
+		if(pendingRows == blockRows){
+			flush();
+		}
+	}
+
+	//writes the seeds added so far as a block
+	public synchronized void flush() throws IOException {
+		if(pendingRows == 0){
+			return;
+		}
+		int rows = pendingRows;
+		ByteBuffer block = ByteBuffer.allocate(8 + rows * (8 + slots.size()));
+		block.putInt(blockMagic);
+		block.putInt(rows);
+		for(int i=0; i<rows; i++){
+			block.putLong(pendingSeeds[i]);
+		}
+		for(int slot=0; slot<slots.size(); slot++){
+			block.put(pendingColumns, slot * blockRows, rows);
+		}
+		block.flip();
+		writeFully(block, end);
+		blocks.add(new Block(end + 8, rows));
+		end += block.capacity();
+		pendingRows = 0;
+	}
+
+	public synchronized void close() throws IOException {
+		if(channel.isOpen()){
+			try{
+				flush();
+			}
+			finally{
+				channel.close();
+			}
+		}
+	}
+
+	/*******************************************/
+	// Query
+	/*******************************************/
+
+	//the seeds that meet every constraint (see Constraint), up to limit of them, and how many there are in all
+	public static class Result {
+		public final long matches;
+		public final long seedsScanned;
+		public final long[] seeds;
+
+		Result(long matches, long seedsScanned, long[] seeds){
+			this.matches = matches;
+			this.seedsScanned = seedsScanned;
+			this.seeds = seeds;
+		}
+	}
+
+	//scans the columns the constraints cover a block at a time, building a bitmap of the rows each one
+	//allows and and-ing them together, a column is a run of bytes so each one is a single tight loop
+	public synchronized Result query(Constraint[] constraints, int limit) throws IOException {
+		flush();
+		//each constraint's columns and pokemon as a lookup table
+		int[][] columns = new int[constraints.length][];
+		boolean[][] lookup = new boolean[constraints.length][256];
+		for(int c=0; c<constraints.length; c++){
+			List<Integer> covered = new ArrayList<Integer>();
+			int sectionEnd = slots.getSectionEnd(constraints[c].section);
+			for(int slot=slots.getSectionStart(constraints[c].section); slot<sectionEnd; slot++){
+				if(constraints[c].covers(slots, slot)){
+					covered.add(slot);
+				}
+			}
+			columns[c] = new int[covered.size()];
+			for(int i=0; i<columns[c].length; i++){
+				columns[c][i] = covered.get(i);
+			}
+			for(int pokemon=0; pokemon<256; pokemon++){
+				lookup[c][pokemon] = constraints[c].matches(pokemon);
+			}
+		}
+
+		//fewest columns first, a block is done as soon as no row is left
+		Integer[] sorted = new Integer[constraints.length];
+		for(int c=0; c<sorted.length; c++){
+			sorted[c] = c;
+		}
+		final int[][] sortColumns = columns;
+		Arrays.sort(sorted, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b){
+				return Integer.compare(sortColumns[a].length, sortColumns[b].length);
+			}
+		});
+		int[] order = new int[sorted.length];
+		for(int c=0; c<order.length; c++){
+			order[c] = sorted[c];
+		}
+
+		long matches = 0;
+		long scanned = 0;
+		long[] seeds = new long[Math.max(0, limit)];
+		int found = 0;
+		byte[] column = new byte[0];
+		long[] result = new long[0];
+		long[] rowBits = new long[0];
+		for(Block block: blocks){
+			int rows = block.rows;
+			int words = (rows + 63) >>> 6;
+			if(result.length < words){
+				result = new long[words];
+				rowBits = new long[words];
+			}
+			//sized on its own, a block can have more rows in the same number of words
+			if(column.length < rows){
+				column = new byte[rows];
+			}
+			MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, block.position, rows * (8L + slots.size()));
+			for(int w=0; w<words; w++){
+				result[w] = -1L;
+			}
+			if((rows & 63) != 0){
+				result[words - 1] = (1L << (rows & 63)) - 1;
+			}
+
+			for(int k=0; k<order.length && !isEmpty(result, words); k++){
+				int c = order[k];
+				Constraint constraint = constraints[c];
+				boolean[] wanted = lookup[c];
+				//once few rows are left it's cheaper to look them up in each column than to scan the columns
+				if(count(result, words) * 16 < rows){
+					filterRows(data, rows, result, words, constraint, columns[c], wanted);
+					continue;
+				}
+				//any: rows where a covered slot matches, every: rows where all of them do
+				for(int w=0; w<words; w++){
+					rowBits[w] = constraint.every ? -1L : 0L;
+				}
+				for(int slot: columns[c]){
+					data.position(rows * 8 + slot * rows);
+					data.get(column, 0, rows);
+					if(constraint.every){
+						for(int r=0; r<rows; r++){
+							if(!wanted[column[r] & 0xFF]){
+								rowBits[r >>> 6] &= ~(1L << r);
+							}
+						}
+					}
+					else{
+						for(int r=0; r<rows; r++){
+							if(wanted[column[r] & 0xFF]){
+								rowBits[r >>> 6] |= 1L << r;
+							}
+						}
+					}
+				}
+				if(columns[c].length == 0 && constraint.every){
+					//nothing to be every one of
+					for(int w=0; w<words; w++){
+						rowBits[w] = 0;
+					}
+				}
+				for(int w=0; w<words; w++){
+					result[w] &= constraint.forbidden ? ~rowBits[w] : rowBits[w];
+				}
+			}
+
+			for(int w=0; w<words; w++){
+				long bits = result[w];
+				matches += Long.bitCount(bits);
+				while(bits != 0 && found < seeds.length){
+					int r = (w << 6) + Long.numberOfTrailingZeros(bits);
+					seeds[found++] = data.getLong(r * 8);
+					bits &= bits - 1;
+				}
+			}
+			scanned += rows;
+		}
+		long[] trimmed = new long[found];
+		System.arraycopy(seeds, 0, trimmed, 0, found);
+		return new Result(matches, scanned, trimmed);
+	}
+
+	//counts the seeds that meet every constraint the slow way, a row and a slot at a time, to check query against
+	public synchronized long countMatches(Constraint[] constraints) throws IOException {
+		flush();
+		long matches = 0;
+		for(Block block: blocks){
+			int rows = block.rows;
+			MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, block.position, rows * (8L + slots.size()));
+			for(int r=0; r<rows; r++){
+				boolean keep = true;
+				for(int c=0; c<constraints.length && keep; c++){
+					Constraint constraint = constraints[c];
+					int covered = 0;
+					int matched = 0;
+					int sectionEnd = slots.getSectionEnd(constraint.section);
+					for(int slot=slots.getSectionStart(constraint.section); slot<sectionEnd; slot++){
+						if(constraint.covers(slots, slot)){
+							covered++;
+							if(constraint.matches(data.get(rows * 8 + slot * rows + r) & 0xFF)){
+								matched++;
+							}
+						}
+					}
+					keep = constraint.every ? covered > 0 && matched == covered : constraint.forbidden ? matched == 0 : matched > 0;
+				}
+				if(keep){
+					matches++;
+				}
+			}
+		}
+		return matches;
+	}
+
+	//clears the rows in result that don't meet the constraint, looking at just those rows
+	private static void filterRows(ByteBuffer data, int rows, long[] result, int words, Constraint constraint,
+			int[] columns, boolean[] wanted){
+		for(int w=0; w<words; w++){
+			long bits = result[w];
+			while(bits != 0){
+				int r = (w << 6) + Long.numberOfTrailingZeros(bits);
+				boolean any = false;
+				boolean every = columns.length > 0;
+				for(int slot: columns){
+					if(wanted[data.get(rows * 8 + slot * rows + r) & 0xFF]){
+						any = true;
+					}
+					else{
+						every = false;
+					}
+				}
+				boolean keep = constraint.every ? every : constraint.forbidden ? !any : any;
+				if(!keep){
+					result[w] &= ~(1L << r);
+				}
+				bits &= bits - 1;
+			}
+		}
+	}
+
+	private static int count(long[] bits, int words){
+		int count = 0;
+		for(int w=0; w<words; w++){
+			count += Long.bitCount(bits[w]);
+		}
+		return count;
+	}
+
+	private static boolean isEmpty(long[] bits, int words){
+		for(int w=0; w<words; w++){
+			if(bits[w] != 0){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*******************************************/
+	// Setters/Getters
+	/*******************************************/
+
+	public File getFile(){
+		return file;
+	}
+	public String getRomHash(){
+		return romHash;
+	}
+	public String getOptions(){
+		return options;
+	}
+	public SlotIndex getSlotIndex(){
+		return slots;
+	}
+	//seeds in the store, including ones not yet written out
+	public synchronized long getSeedCount(){
+		long seeds = pendingRows;
+		for(Block block: blocks){
+			seeds += block.rows;
+		}
+		return seeds;
+	}
+
+	/*******************************************/
+	// File I/O
+	/*******************************************/
+
+	private void writeFully(ByteBuffer buffer, long position) throws IOException {
+		while(buffer.hasRemaining()){
+			position += channel.write(buffer, position);
+		}
+	}
+
+	private void readFully(ByteBuffer buffer, long position) throws IOException {
+		while(buffer.hasRemaining()){
+			int read = channel.read(buffer, position);
+			if(read < 0){
+				throw new IOException(file + " ended early");
+			}
+			position += read;
+		}
+	}
+
+	/*******************************************/
+	// Command Line
+	/*******************************************/
+
+	public static void main(String[] args) throws IOException {
+		if(args.length < 1){
+			printUsage();
+			return;
+		}
+		SpoilerStore store = open(new File(args[0]));
+		try{
+			RedBlueRandomizer names = new RedBlueRandomizer(0);
+			int limit = 20;
+			boolean check = false;
+			List<Constraint> constraints = new ArrayList<Constraint>();
+			for(int i=1; i<args.length; i++){
+				if(args[i].equals("--limit") && i + 1 < args.length){
+					limit = Integer.parseInt(args[++i]);
+				}
+				else if(args[i].equals("--check")){
+					check = true;
+				}
+				else{
+					try{
+						constraints.add(Constraint.parse(args[i], names));
+					}
+					catch(IllegalArgumentException e){
+						System.err.println(e.getMessage());
+						printUsage();
+						return;
+					}
+				}
+			}
+			System.out.println(store.getSeedCount() + " seeds, " + store.getSlotIndex().size() + " slots each, options: " + store.getOptions());
+			if(constraints.isEmpty()){
+				return;
+			}
+			long start = System.nanoTime();
+			Result result = store.query(constraints.toArray(new Constraint[constraints.size()]), limit);
+			double millis = (System.nanoTime() - start) / 1e6;
+			for(long seed: result.seeds){
+				System.out.println(seed);
+			}
+			System.out.println(String.format("%d of %d seeds match (%.2f%%), scanned in %.1fms", result.matches, result.seedsScanned,
+					result.seedsScanned == 0 ? 0.0 : result.matches * 100.0 / result.seedsScanned, millis));
+			if(check){
+				//every block again, a row at a time, whatever sizes the blocks are
+				long expected = store.countMatches(constraints.toArray(new Constraint[constraints.size()]));
+				System.out.println(expected == result.matches ? "Check passed, " + store.blocks.size() + " blocks" :
+						"Check FAILED, " + expected + " seeds match row by row");
+				if(expected != result.matches){
+					System.exit(1);
+				}
+			}
+		}
+		finally{
+			store.close();
+		}
+	}
+
+	private static void printUsage(){
+		System.err.println("Usage: SpoilerStore <store> [--limit 20] [--check] [constraints]\n" +
+				"  lists the seeds in a store written by BatchRandomizer --spoiler-store that meet every constraint\n" +
+				"  --check counts the matches again a row at a time and exits with 1 if the query got it wrong\n" + Constraint.syntax);
+	}
+}
@@ -0,0 +1,234 @@
+package redbluerandomizer.spoiler;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+import redbluerandomizer.RedBlueRandomizer;
+import redbluerandomizer.RomView;
+import redbluerandomizer.Section;
+import redbluerandomizer.SlotIndex;
+
+//writes every randomized slot straight from the ROM view as CSV, JSON lines or a compact binary record list.
+//names and hex digits come from tables built once, a writer reuses its buffer so keep one per thread.
+public class SpoilerWriter {
+
+	//formats
+	public static final int CSV        = 0;
+	public static final int JSON_LINES = 1;
+	public static final int BINARY     = 2;
+	public static final String[] formatNames = {"csv", "jsonl", "bin"};
+
+	//binary layout: "RBSP", version, seed, slot count, then section/group/offset/level/species per slot
+	public static final int binaryMagic = 0x52425350;
+	public static final int binaryVersion = 1;
+	public static final int binaryRecordSize = 9;
+
+	private static final byte[] hexDigits = "0123456789ABCDEF".getBytes();
+	private static final byte[] csvHeader = ascii("seed,section,group,offset,level,species,name\n");
+	private static final byte[] jsonSeed    = ascii("{\"seed\":");
+	private static final byte[] jsonSection = ascii(",\"section\":\"");
+	private static final byte[] jsonGroup   = ascii("\",\"group\":");
+	private static final byte[] jsonOffset  = ascii(",\"offset\":\"");
+	private static final byte[] jsonLevel   = ascii("\",\"level\":");
+	private static final byte[] jsonNull    = ascii("null");
+	private static final byte[] jsonSpecies = ascii(",\"species\":\"");
+	private static final byte[] jsonName    = ascii("\",\"name\":\"");
+	private static final byte[] jsonEnd     = ascii("\"}\n");
+	private static final byte[] longMinValue = ascii("9223372036854775808");
+
+	private final int format;
+	private final byte[][] names = new byte[256][];
+	private final byte[][] sectionNames = new byte[Section.COUNT][];
+	private final byte[] digits = new byte[20];
+	private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+
+	public SpoilerWriter(RedBlueRandomizer r, int format){
+		if(format < CSV || format > BINARY){
+			throw new IllegalArgumentException("Unknown spoiler format " + format);
+		}
+		this.format = format;
+		for(int i=0; i<names.length; i++){
+			names[i] = ascii("0x" + (char)hexDigits[i >> 4] + (char)hexDigits[i & 0xF]);
+		}
+		for(int i=0; i<r.indices.length; i++){
+			names[r.indices[i]] = ascii(r.names[i]);
+		}
+		for(int i=0; i<Section.COUNT; i++){
+			sectionNames[i] = ascii(Section.getName(i));
+		}
+	}
+
+	/*******************************************/
+	// Write
+	/*******************************************/
+
+	//writes the spoiler for a ROM to a file
+	public void write(RomView rom, SlotIndex slots, long seed, File file) throws IOException {
+		FileChannel channel = new FileOutputStream(file).getChannel();
+		try{
+			write(rom, slots, seed, channel);
+		}
+		finally{
+			channel.close();
+		}
+	}
+
+	//writes the spoiler for a ROM, one record per slot in section order
+	public void write(RomView rom, SlotIndex slots, long seed, WritableByteChannel out) throws IOException {
+		buffer.clear();
+		if(format == CSV){
+			buffer.put(csvHeader);
+		}
+		else if(format == BINARY){
+			buffer.putInt(binaryMagic);
+			buffer.putInt(binaryVersion);
+			buffer.putLong(seed);
+			buffer.putInt(slots.size());
+		}
+		for(int section=0; section<Section.COUNT; section++){
+			int end = slots.getSectionEnd(section);
+			for(int slot=slots.getSectionStart(section); slot<end; slot++){
+				//a record is never more than 128 bytes
+				if(buffer.remaining() < 128){
+					flush(out);
+				}
+				int offset = slots.getOffset(slot);
+				int levelOffset = slots.getLevelOffset(slot);
+				int level = levelOffset < 0 ? -1 : rom.get(levelOffset) & 0xFF;
+				int species = rom.get(offset) & 0xFF;
+				if(format == CSV){
+					writeCsv(seed, section, slots.getGroup(slot), offset, level, species);
+				}
+				else if(format == JSON_LINES){
+					writeJson(seed, section, slots.getGroup(slot), offset, level, species);
+				}
+				else{
+					buffer.put((byte)section);
+					buffer.putShort((short)slots.getGroup(slot));
+					buffer.putInt(offset);
+					buffer.put((byte)Math.max(level, 0));
+					buffer.put((byte)species);
+				}
+			}
+		}
+		flush(out);
+	}
+
+	private void writeCsv(long seed, int section, int group, int offset, int level, int species){
+		putNumber(seed);
+		buffer.put((byte)',');
+		buffer.put(sectionNames[section]);
+		buffer.put((byte)',');
+		putNumber(group);
+		buffer.put((byte)',');
+		putHex(offset);
+		buffer.put((byte)',');
+		if(level >= 0){
+			putNumber(level);
+		}
+		buffer.put((byte)',');
+		putHex(species);
+		buffer.put((byte)',');
+		buffer.put(names[species]);
+		buffer.put((byte)'\n');
+	}
+
+	private void writeJson(long seed, int section, int group, int offset, int level, int species){
+		buffer.put(jsonSeed);
+		putNumber(seed);
+		buffer.put(jsonSection);
+		buffer.put(sectionNames[section]);
+		buffer.put(jsonGroup);
+		putNumber(group);
+		buffer.put(jsonOffset);
+		putHex(offset);
+		buffer.put(jsonLevel);
+		if(level >= 0){
+			putNumber(level);
+		}
+		else{
+			buffer.put(jsonNull);
+		}
+		buffer.put(jsonSpecies);
+		putHex(species);
+		buffer.put(jsonName);
+		buffer.put(names[species]);
+		buffer.put(jsonEnd);
+	}
+
+	private void flush(WritableByteChannel out) throws IOException {
+		buffer.flip();
+		while(buffer.hasRemaining()){
+			out.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/*******************************************/
+	// Misc.
+	/*******************************************/
+
+	//writes a decimal number without going through a String
+	private void putNumber(long value){
+		if(value < 0){
+			buffer.put((byte)'-');
+			if(value == Long.MIN_VALUE){
+				buffer.put(longMinValue);
+				return;
+			}
+			value = -value;
+		}
+		int length = 0;
+		do{
+			digits[length++] = (byte)('0' + (value % 10));
+			value /= 10;
+		} while(value > 0);
+		while(length > 0){
+			buffer.put(digits[--length]);
+		}
+	}
+
+	//writes 0x followed by at least two uppercase hex digits, like RomPrinter
+	private void putHex(int value){
+		buffer.put((byte)'0');
+		buffer.put((byte)'x');
+		int shift = 28;
+		while(shift > 4 && (value >>> shift) == 0){
+			shift -= 4;
+		}
+		for(; shift>=0; shift-=4){
+			buffer.put(hexDigits[(value >>> shift) & 0xF]);
+		}
+	}
+
+	private static byte[] ascii(String text){
+		byte[] bytes = new byte[text.length()];
+		for(int i=0; i<bytes.length; i++){
+			bytes[i] = (byte)text.charAt(i);
+		}
+		return bytes;
+	}
+
+	//looks up a format by its name (csv, jsonl, bin), -1 if there isn't one
+	public static int parseFormat(String name){
+		for(int i=0; i<formatNames.length; i++){
+			if(formatNames[i].equalsIgnoreCase(name)){
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	public int getFormat(){
+		return format;
+	}
+
+	//file extension for the format
+	public String getExtension(){
+		return formatNames[format];
+	}
+}
@@ -7,20 +7,16 @@ import javax.swing.filechooser.FileFilter;
 public class GameboyFileFilter extends FileFilter {
 
 	private String description = ".gb ROM files";
-	private String regex = ".*\\.gb$";
+	private String extension = ".gb";
 	
     public boolean accept(File file) {
       if(file.isDirectory()){
     	  return true;
       }
       
-      String fileName = file.getName().toLowerCase();
-      if(fileName.matches(regex)){
-    	  return true;
-      }
-      else{
-    	  return false;
-      }
+      //a plain suffix check, this runs for every file the chooser lists
+      String fileName = file.getName();
+      return fileName.regionMatches(true, fileName.length() - extension.length(), extension, 0, extension.length());
     }
 
 	@Override
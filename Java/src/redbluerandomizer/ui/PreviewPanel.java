@@ -0,0 +1,119 @@
+package redbluerandomizer.ui;
+
+import java.awt.BorderLayout;
+import java.awt.FlowLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import javax.swing.JComboBox;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.SwingConstants;
+import javax.swing.table.DefaultTableCellRenderer;
+
+import redbluerandomizer.RomView;
+import redbluerandomizer.SlotIndex;
+
+//a table of every pokemon slot (title screen, starters, wild areas with levels, trainer parties) in the ROM
+//last loaded or randomized, with a filter by species. the table isn't sortable, a row sorter would read every
+//row up front where the plain table only reads the rows on screen
+public class PreviewPanel extends JPanel {
+
+	private static final long serialVersionUID = 1L;
+
+	private final SlotTableModel model;
+	private final JTable table;
+	private final JComboBox<String> filterBox;
+	private final JLabel countLabel;
+	//the pokemon index for each filter entry after "All"
+	private final int[] filterIndices;
+
+	public PreviewPanel(int[] indices, final String[] names){
+		super(new BorderLayout());
+		model = new SlotTableModel(indices, names);
+
+		//the filter lists the pokemon by name
+		Integer[] order = new Integer[indices.length];
+		for(int i=0; i<order.length; i++){
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b){
+				return names[a].compareToIgnoreCase(names[b]);
+			}
+		});
+		filterIndices = new int[indices.length];
+		String[] filterNames = new String[indices.length + 1];
+		filterNames[0] = "All pokemon";
+		for(int i=0; i<order.length; i++){
+			filterIndices[i] = indices[order[i]];
+			filterNames[i + 1] = names[order[i]];
+		}
+
+		JPanel filterPanel = new JPanel(new FlowLayout(FlowLayout.LEADING));
+		filterPanel.add(new JLabel("Show:"));
+		filterBox = new JComboBox<String>(filterNames);
+		filterBox.setMaximumRowCount(20);
+		filterBox.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				int selected = filterBox.getSelectedIndex();
+				model.setFilter(selected <= 0 ? -1 : filterIndices[selected - 1]);
+				updateCount();
+			}
+		});
+		filterPanel.add(filterBox);
+		countLabel = new JLabel();
+		filterPanel.add(countLabel);
+		add(filterPanel, BorderLayout.NORTH);
+
+		table = new JTable(model);
+		table.setFillsViewportHeight(true);
+		table.getTableHeader().setReorderingAllowed(false);
+		table.getColumnModel().getColumn(SlotTableModel.OFFSET_COLUMN).setCellRenderer(new HexRenderer());
+		table.getColumnModel().getColumn(SlotTableModel.SECTION_COLUMN).setPreferredWidth(60);
+		table.getColumnModel().getColumn(SlotTableModel.GROUP_COLUMN).setPreferredWidth(60);
+		table.getColumnModel().getColumn(SlotTableModel.OFFSET_COLUMN).setPreferredWidth(70);
+		table.getColumnModel().getColumn(SlotTableModel.LEVEL_COLUMN).setPreferredWidth(40);
+		table.getColumnModel().getColumn(SlotTableModel.POKEMON_COLUMN).setPreferredWidth(90);
+		table.getColumnModel().getColumn(SlotTableModel.ORIGINAL_COLUMN).setPreferredWidth(90);
+		add(new JScrollPane(table), BorderLayout.CENTER);
+		updateCount();
+	}
+
+	//shows a ROM, call on the EDT with a view nothing else is writing to
+	public void showRom(RomView rom, SlotIndex slots){
+		model.setRom(rom, slots);
+		updateCount();
+	}
+
+	private void updateCount(){
+		if(model.getSlotCount() == 0){
+			countLabel.setText("No ROM loaded");
+		}
+		else if(model.getFilter() < 0){
+			countLabel.setText(model.getSlotCount() + " slots");
+		}
+		else{
+			countLabel.setText(model.getRowCount() + " of " + model.getSlotCount() + " slots");
+		}
+	}
+
+	//offsets in hex, formatted as the cell is painted
+	private static class HexRenderer extends DefaultTableCellRenderer {
+
+		private static final long serialVersionUID = 1L;
+
+		HexRenderer(){
+			setHorizontalAlignment(SwingConstants.RIGHT);
+		}
+
+		@Override
+		protected void setValue(Object value){
+			setText(value == null ? "" : String.format("0x%05X", value));
+		}
+	}
+}
@@ -13,9 +13,13 @@ import javax.swing.UIManager;
 import javax.swing.UnsupportedLookAndFeelException;
 
 
-import java.awt.event.MouseAdapter;
-import java.awt.event.MouseEvent;
 import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import javax.swing.JButton;
 import java.awt.BorderLayout;
 import java.awt.GridBagLayout;
@@ -31,9 +35,15 @@ import javax.swing.border.TitledBorder;
 
 import java.awt.event.ActionListener;
 import java.awt.event.ActionEvent;
+import javax.swing.JProgressBar;
 import javax.swing.SwingConstants;
+import javax.swing.SwingWorker;
 
+import redbluerandomizer.ProgressListener;
 import redbluerandomizer.RedBlueRandomizer;
+import redbluerandomizer.RomView;
+import redbluerandomizer.Section;
+import redbluerandomizer.SlotIndex;
 import javax.swing.GroupLayout;
 import javax.swing.GroupLayout.Alignment;
 import javax.swing.LayoutStyle.ComponentPlacement;
@@ -49,6 +59,11 @@ public class RandomizerUI {
 	private JRadioButton totallyRandom;
 	private JRadioButton oneToOneReplacement;
 	private JCheckBox noLegendariesCheckBox;
+	private JMenuItem openMenuItem;
+	private JProgressBar progressBar;
+	private JButton cancelButton;
+	private PreviewPanel previewPanel;
+	private JDialog previewDialog;
 	
 	
 	private RedBlueRandomizer randomizer;
@@ -56,6 +71,9 @@ public class RandomizerUI {
 	private String inputFileDirectory;
 	private final ButtonGroup buttonGroup = new ButtonGroup();	
 	private JCheckBox starterCheckBox;
+	private SwingWorker<?, ?> currentTask;
+	//a task's thread can still be in the randomizer after cancel has called its done()
+	private boolean workerRunning = false;
 	
 	/**
 	 * Launch the application.
@@ -98,34 +116,32 @@ public class RandomizerUI {
 		JMenu mnFile = new JMenu("File");
 		menuBar.add(mnFile);
 		
-		JMenuItem menuItem = new JMenuItem("Open");
-		menuItem.addMouseListener(new MouseAdapter() {			
-			@Override
-			public void mouseReleased(MouseEvent e) {
+		openMenuItem = new JMenuItem("Open");
+		openMenuItem.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
 				JFileChooser choose = new JFileChooser();
 				choose.setFileFilter(new GameboyFileFilter());
 				if(inputFileDirectory != null){
 					choose.setCurrentDirectory(new File(inputFileDirectory));
 				}
-				choose.showOpenDialog(null);
-				if(choose.getSelectedFile() != null){
-					try{
-						File rom = choose.getSelectedFile();
-						inputFilePath = rom.getAbsolutePath();
-						inputFileDirectory = rom.getParentFile().getAbsolutePath();
-						randomizer.readRom(inputFilePath);
-						if(!randomizer.isPokemonRedBlue()){
-							JOptionPane.showMessageDialog(null, "Warning: This doesn't look like a Pokemon Red or Blue ROM...");
-						}						
-						randomizeButton.setEnabled(true);
-					}
-					catch(Exception ex){
-						JOptionPane.showMessageDialog(null, "There was an error opening the file.");
-					}
-				}							
+				if(choose.showOpenDialog(frmRedblueRandomizer) == JFileChooser.APPROVE_OPTION){
+					openRom(choose.getSelectedFile());
+				}
+			}
+		});
+		mnFile.add(openMenuItem);
+		
+		JMenu mnView = new JMenu("View");
+		menuBar.add(mnView);
+		
+		JMenuItem previewMenuItem = new JMenuItem("Preview");
+		previewMenuItem.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				showPreview();
 			}
 		});
-		mnFile.add(menuItem);
+		mnView.add(previewMenuItem);
+		previewPanel = new PreviewPanel(randomizer.indices, randomizer.names);
 		
 		JPanel panel = new JPanel();
 		panel.setToolTipText("T\n");
@@ -164,37 +180,45 @@ public class RandomizerUI {
 		randomizeButton.setEnabled(false);
 		randomizeButton.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent arg0) {
-				try{
-					JFileChooser chooser = new JFileChooser();
-					chooser.setCurrentDirectory(new File(inputFileDirectory));
-					chooser.setFileFilter(new GameboyFileFilter());
-					chooser.showSaveDialog(null);				
-					File outputFile = chooser.getSelectedFile();
-					if(outputFile != null){
-						//set options
-						randomizer.setTitleScreenToggle(titleScreenCheckBox.isSelected());
-						randomizer.setPlayerStartersToggle(starterCheckBox.isSelected());
-						randomizer.setwildAreasToggle(wildCheckBox.isSelected());
-						randomizer.setTrainersToggle(trainerCheckBox.isSelected());
-						randomizer.setOneToOneToggle(oneToOneReplacement.isSelected());
-						randomizer.setNoLegendariesToggle(noLegendariesCheckBox.isSelected());
-						
-						//randomize and save
-						randomizer.randomize();
-						String outputFilePath = outputFile.getAbsolutePath();
-						if(!outputFilePath.matches(".*\\.gb")){
-							outputFilePath += ".gb";
-						}
-						randomizer.saveRom(outputFilePath);
-						JOptionPane.showMessageDialog(null, "ROM has been randomized! :D");
+				//set options
+				randomizer.setTitleScreenToggle(titleScreenCheckBox.isSelected());
+				randomizer.setPlayerStartersToggle(starterCheckBox.isSelected());
+				randomizer.setwildAreasToggle(wildCheckBox.isSelected());
+				randomizer.setTrainersToggle(trainerCheckBox.isSelected());
+				randomizer.setOneToOneToggle(oneToOneReplacement.isSelected());
+				randomizer.setNoLegendariesToggle(noLegendariesCheckBox.isSelected());
+				randomizer.setSeed(new Date().getTime());
+				
+				//start randomizing while the save dialog is open, the task waits for the file before writing
+				RandomizeTask task = new RandomizeTask();
+				startTask(task);
+				JFileChooser chooser = new JFileChooser();
+				chooser.setCurrentDirectory(new File(inputFileDirectory));
+				chooser.setFileFilter(new GameboyFileFilter());
+				if(chooser.showSaveDialog(frmRedblueRandomizer) == JFileChooser.APPROVE_OPTION){
+					String outputFilePath = chooser.getSelectedFile().getAbsolutePath();
+					if(!outputFilePath.matches(".*\\.gb")){
+						outputFilePath += ".gb";
 					}
-					else{
-						return;
-					}					
+					task.setOutputFile(new File(outputFilePath));
 				}
-				catch(Exception e){
-					JOptionPane.showMessageDialog(null, "An error occurred during randomization. Please check your rom and try again.");
-					e.printStackTrace();
+				else{
+					task.cancel(true);
+				}
+			}
+		});
+		
+		progressBar = new JProgressBar(0, 100);
+		progressBar.setStringPainted(true);
+		progressBar.setString("");
+		
+		cancelButton = new JButton("Cancel");
+		cancelButton.setEnabled(false);
+		cancelButton.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				if(currentTask != null){
+					currentTask.cancel(true);
+					updateControls();
 				}
 			}
 		});
@@ -205,6 +229,10 @@ public class RandomizerUI {
 					.addContainerGap()
 					.addGroup(groupLayout.createParallelGroup(Alignment.TRAILING, false)
 						.addComponent(randomizeButton, Alignment.LEADING, GroupLayout.DEFAULT_SIZE, GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
+						.addGroup(Alignment.LEADING, groupLayout.createSequentialGroup()
+							.addComponent(progressBar, GroupLayout.DEFAULT_SIZE, GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
+							.addPreferredGap(ComponentPlacement.RELATED)
+							.addComponent(cancelButton))
 						.addComponent(panel_1, Alignment.LEADING, GroupLayout.DEFAULT_SIZE, GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
 						.addComponent(panel, Alignment.LEADING, GroupLayout.DEFAULT_SIZE, GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
 					.addContainerGap(623, Short.MAX_VALUE))
@@ -217,9 +245,221 @@ public class RandomizerUI {
 					.addPreferredGap(ComponentPlacement.RELATED)
 					.addComponent(panel_1, GroupLayout.PREFERRED_SIZE, 95, GroupLayout.PREFERRED_SIZE)
 					.addGap(8)
-					.addComponent(randomizeButton, GroupLayout.PREFERRED_SIZE, 110, GroupLayout.PREFERRED_SIZE)
+					.addComponent(randomizeButton, GroupLayout.PREFERRED_SIZE, 72, GroupLayout.PREFERRED_SIZE)
+					.addPreferredGap(ComponentPlacement.RELATED)
+					.addGroup(groupLayout.createParallelGroup(Alignment.CENTER)
+						.addComponent(progressBar, GroupLayout.PREFERRED_SIZE, 30, GroupLayout.PREFERRED_SIZE)
+						.addComponent(cancelButton, GroupLayout.PREFERRED_SIZE, 30, GroupLayout.PREFERRED_SIZE))
 					.addContainerGap())
 		);
 		frmRedblueRandomizer.getContentPane().setLayout(groupLayout);
 	}
+	
+	/*******************************************/
+	// Preview
+	/*******************************************/
+	
+	//opens the slot table next to the main window, it follows every load and randomize while it's open
+	private void showPreview(){
+		if(previewDialog == null){
+			previewDialog = new JDialog(frmRedblueRandomizer, "Preview");
+			previewDialog.setDefaultCloseOperation(JDialog.HIDE_ON_CLOSE);
+			previewDialog.getContentPane().add(previewPanel);
+			previewDialog.setSize(520, 600);
+			previewDialog.setLocation(frmRedblueRandomizer.getX() + frmRedblueRandomizer.getWidth(), frmRedblueRandomizer.getY());
+		}
+		previewDialog.setVisible(true);
+	}
+	
+	//takes a copy of the randomizer's writes (the base is shared, not copied) so the table never reads
+	//a view a task is writing to, call on the thread that last wrote the ROM
+	private RomView getPreviewRom(){
+		return randomizer.getRomView().snapshot();
+	}
+	
+	/*******************************************/
+	// Background Work
+	/*******************************************/
+	
+	//runs a task off the EDT, locking the controls until it's done and its thread has let go of the randomizer.
+	//it gets a thread of its own rather than execute() since run() only returns once doInBackground has
+	//(or straight away if it was cancelled before it started), where done() is called as soon as it's cancelled
+	private void startTask(final SwingWorker<?, ?> task){
+		currentTask = task;
+		workerRunning = true;
+		setBusy(true);
+		Thread worker = new Thread(new Runnable() {
+			public void run() {
+				try{
+					task.run();
+				}
+				finally{
+					EventQueue.invokeLater(new Runnable() {
+						public void run() {
+							workerFinished();
+						}
+					});
+				}
+			}
+		}, "randomizer task");
+		worker.setDaemon(true);
+		worker.start();
+	}
+	
+	//called on the EDT when a task finishes, however it finished
+	private void taskDone(String status){
+		currentTask = null;
+		progressBar.setValue(0);
+		progressBar.setString(status);
+		updateControls();
+	}
+	
+	//called on the EDT once the task's thread is out of doInBackground
+	private void workerFinished(){
+		workerRunning = false;
+		updateControls();
+	}
+	
+	private void updateControls(){
+		if(currentTask == null && !workerRunning){
+			setBusy(false);
+		}
+		else{
+			//cancelled and waiting for the thread, there's nothing left to cancel
+			cancelButton.setEnabled(currentTask != null && !currentTask.isCancelled());
+		}
+	}
+	
+	private void setBusy(boolean busy){
+		openMenuItem.setEnabled(!busy);
+		randomizeButton.setEnabled(!busy && inputFilePath != null);
+		cancelButton.setEnabled(busy);
+	}
+	
+	//reads the ROM in the background so a slow drive doesn't freeze the window
+	private void openRom(final File romFile){
+		progressBar.setIndeterminate(true);
+		progressBar.setString("Reading " + romFile.getName() + "...");
+		startTask(new SwingWorker<Boolean, Void>() {
+			//the ROM is read into a randomizer of its own and only handed over once it's loaded, a cancelled or
+			//failed open leaves the ROM that was open before untouched
+			private final RedBlueRandomizer reader = new RedBlueRandomizer();
+			private RomView preview;
+			private SlotIndex slots;
+			
+			@Override
+			protected Boolean doInBackground() throws Exception {
+				reader.readRom(romFile.getAbsolutePath());
+				if(!reader.isPokemonRedBlue()){
+					return false;
+				}
+				//the slot index is built here rather than on the EDT
+				slots = reader.getSlotIndex();
+				//nothing randomizes with the reader, so its view can be shown as it is
+				preview = reader.getRomView();
+				return true;
+			}
+			
+			@Override
+			protected void done() {
+				progressBar.setIndeterminate(false);
+				try{
+					boolean pokemonRedBlue = get();
+					randomizer.loadRom(reader.getBaseRom());
+					randomizer.setSlotIndex(slots);
+					inputFilePath = romFile.getAbsolutePath();
+					inputFileDirectory = romFile.getParentFile().getAbsolutePath();
+					taskDone("Loaded " + romFile.getName());
+					previewPanel.showRom(preview, slots);
+					if(!pokemonRedBlue){
+						JOptionPane.showMessageDialog(frmRedblueRandomizer, "Warning: This doesn't look like a Pokemon Red or Blue ROM...");
+					}
+				}
+				catch(CancellationException e){
+					taskDone("Cancelled");
+				}
+				catch(Exception e){
+					taskDone("");
+					JOptionPane.showMessageDialog(frmRedblueRandomizer, "There was an error opening the file.");
+				}
+			}
+		});
+	}
+	
+	//randomizes in the background and reports each phase, writing once the save dialog has given it a file
+	private class RandomizeTask extends SwingWorker<File, Integer> implements ProgressListener {
+		
+		//the sections and then the write
+		private static final int phaseCount = Section.COUNT + 1;
+		private static final int writePhase = Section.COUNT;
+		
+		private final CountDownLatch outputChosen = new CountDownLatch(1);
+		private volatile File outputFile;
+		private volatile RomView preview;
+		
+		public void setOutputFile(File outputFile){
+			this.outputFile = outputFile;
+			outputChosen.countDown();
+		}
+		
+		@Override
+		protected File doInBackground() throws Exception {
+			if(!randomizer.randomize(this)){
+				return null;
+			}
+			preview = getPreviewRom();
+			outputChosen.await();
+			if(isCancelled()){
+				return null;
+			}
+			publish(writePhase);
+			try{
+				randomizer.saveRom(outputFile.getAbsolutePath());
+			}
+			catch(IOException e){
+				//cancelling interrupts the write, don't leave half a ROM behind
+				if(isCancelled()){
+					outputFile.delete();
+				}
+				throw e;
+			}
+			return outputFile;
+		}
+		
+		//called by the randomizer on this worker's thread
+		public boolean sectionStarted(int section){
+			publish(section);
+			return !isCancelled();
+		}
+		
+		@Override
+		protected void process(List<Integer> phases) {
+			int phase = phases.get(phases.size() - 1);
+			progressBar.setValue(phase * 100 / phaseCount);
+			progressBar.setString(phase == writePhase ? "Writing ROM..." : "Randomizing " + Section.getName(phase) + " pokemon...");
+		}
+		
+		@Override
+		protected void done() {
+			try{
+				File written = get();
+				taskDone(written == null ? "Cancelled" : "Saved " + written.getName());
+				if(written != null){
+					previewPanel.showRom(preview, randomizer.getSlotIndex());
+					JOptionPane.showMessageDialog(frmRedblueRandomizer, "ROM has been randomized! :D\nSeed: " + randomizer.getSeed());
+				}
+			}
+			catch(CancellationException e){
+				taskDone("Cancelled");
+			}
+			catch(InterruptedException e){
+				taskDone("Cancelled");
+			}
+			catch(ExecutionException e){
+				taskDone("");
+				JOptionPane.showMessageDialog(frmRedblueRandomizer, "An error occurred during randomization. Please check your rom and try again.");
+				e.getCause().printStackTrace();
+			}
+		}
+	}
 }
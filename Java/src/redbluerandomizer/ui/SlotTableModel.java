@@ -0,0 +1,148 @@
+package redbluerandomizer.ui;
+
+import javax.swing.table.AbstractTableModel;
+
+import redbluerandomizer.RomView;
+import redbluerandomizer.Section;
+import redbluerandomizer.SlotIndex;
+
+//every pokemon slot of a ROM as a table row, read straight from the view and the slot index when the table
+//asks for a cell. nothing is decoded ahead of time, so a JTable (which only asks for the rows it paints) costs
+//the same with thousands of slots as with a handful. names come from a table made once, so a cell never
+//builds a string, and the filter keeps the matching slot numbers rather than copies of the rows
+public class SlotTableModel extends AbstractTableModel {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final int SECTION_COLUMN  = 0;
+	public static final int GROUP_COLUMN    = 1;
+	public static final int OFFSET_COLUMN   = 2;
+	public static final int LEVEL_COLUMN    = 3;
+	public static final int POKEMON_COLUMN  = 4;
+	public static final int ORIGINAL_COLUMN = 5;
+
+	private static final String[] columnNames = {"Section", "Area/Party", "Offset", "Level", "Pokemon", "Was"};
+	private static final Class<?>[] columnClasses = {String.class, Integer.class, Integer.class, Integer.class, String.class, String.class};
+
+	//the name for every byte value, the hex value for bytes that aren't pokemon
+	private final String[] pokemonNames = new String[256];
+	private RomView rom;
+	private SlotIndex slots;
+	//slot numbers of the rows when filtered
+	private int[] rows = new int[0];
+	private int rowCount = 0;
+	private int filter = -1;
+
+	public SlotTableModel(int[] indices, String[] names){
+		for(int b=0; b<256; b++){
+			pokemonNames[b] = String.format("0x%02X", b);
+		}
+		for(int i=0; i<indices.length; i++){
+			pokemonNames[indices[i]] = names[i];
+		}
+	}
+
+	/*******************************************/
+	// Setters/Getters
+	/*******************************************/
+
+	//shows a ROM, the view must not change while it's shown (give the table a snapshot of a view that's
+	//still being randomized). null clears the table
+	public void setRom(RomView rom, SlotIndex slots){
+		this.rom = rom;
+		this.slots = rom == null ? null : slots;
+		applyFilter();
+	}
+
+	//only shows the slots holding a pokemon, -1 for every slot
+	public void setFilter(int pokemon){
+		filter = pokemon;
+		applyFilter();
+	}
+	public int getFilter(){
+		return filter;
+	}
+
+	//the slot shown in a row
+	public int getSlot(int row){
+		return filter < 0 ? row : rows[row];
+	}
+
+	//total slots whatever the filter
+	public int getSlotCount(){
+		return slots == null ? 0 : slots.size();
+	}
+
+	/*******************************************/
+	// Filter
+	/*******************************************/
+
+	//finds the matching slots, a byte compare per slot
+	private void applyFilter(){
+		rowCount = 0;
+		if(slots != null && filter >= 0){
+			if(rows.length < slots.size()){
+				rows = new int[slots.size()];
+			}
+			for(int slot=0; slot<slots.size(); slot++){
+				if((rom.get(slots.getOffset(slot)) & 0xFF) == filter){
+					rows[rowCount++] = slot;
+				}
+			}
+		}
+		else if(slots != null){
+			rowCount = slots.size();
+		}
+		fireTableDataChanged();
+	}
+
+	/*******************************************/
+	// Table Model
+	/*******************************************/
+
+	public int getRowCount(){
+		return rowCount;
+	}
+
+	public int getColumnCount(){
+		return columnNames.length;
+	}
+
+	@Override
+	public String getColumnName(int column){
+		return columnNames[column];
+	}
+
+	@Override
+	public Class<?> getColumnClass(int column){
+		return columnClasses[column];
+	}
+
+	public Object getValueAt(int row, int column){
+		int slot = getSlot(row);
+		switch(column){
+			case SECTION_COLUMN:
+				return Section.getName(slots.getSection(slot));
+			case GROUP_COLUMN:
+				int section = slots.getSection(slot);
+				//the title screen and starters are all in group 0
+				return section == Section.WILD_AREAS || section == Section.TRAINERS ? Integer.valueOf(slots.getGroup(slot)) : null;
+			case OFFSET_COLUMN:
+				return Integer.valueOf(slots.getOffset(slot));
+			case LEVEL_COLUMN:
+				int levelOffset = slots.getLevelOffset(slot);
+				return levelOffset < 0 ? null : Integer.valueOf(rom.get(levelOffset) & 0xFF);
+			case POKEMON_COLUMN:
+				return pokemonNames[rom.get(slots.getOffset(slot)) & 0xFF];
+			case ORIGINAL_COLUMN:
+				return pokemonNames[rom.getBase()[slots.getOffset(slot)] & 0xFF];
+			default:
+				return null;
+		}
+	}
+
+	@Override
+	public boolean isCellEditable(int row, int column){
+		return false;
+	}
+}
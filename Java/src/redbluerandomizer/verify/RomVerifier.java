@@ -0,0 +1,317 @@
+package redbluerandomizer.verify;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import redbluerandomizer.Checksum;
+import redbluerandomizer.RandomizerOptions;
+import redbluerandomizer.RedBlueRandomizer;
+import redbluerandomizer.Section;
+import redbluerandomizer.SlotIndex;
+import redbluerandomizer.io.RomFile;
+import redbluerandomizer.patch.IpsPatcher;
+
+//checks randomized ROMs against their base: only slots of enabled sections (and the checksums) may change,
+//every changed slot holds a real pokemon, legendaries are gone when they should be, the trainer markers
+//are intact and both checksums add up.
+//the base is compared in bulk with Arrays.mismatch so only the differing bytes are looked at.
+//a verifier is read-only once built and can check ROMs from any number of threads.
+public class RomVerifier {
+
+	public static final int maxMessages = 50;
+
+	private final RedBlueRandomizer layout;
+	private final byte[] base;
+	private final SlotIndex slots;
+	private final int[] sortedOffsets;
+	private final int[] sortedSlots;
+	private final long[] pokemonSet = new long[4];
+	private final int[] baseLegendarySlots;
+
+	public RomVerifier(RedBlueRandomizer layout, byte[] base, SlotIndex slots){
+		this.layout = layout;
+		this.base = base;
+		this.slots = slots;
+
+		//slot offsets sorted for a binary search, with the slot each one belongs to
+		long[] pairs = new long[slots.size()];
+		for(int i=0; i<pairs.length; i++){
+			pairs[i] = ((long)slots.getOffset(i) << 32) | i;
+		}
+		Arrays.sort(pairs);
+		sortedOffsets = new int[pairs.length];
+		sortedSlots = new int[pairs.length];
+		for(int i=0; i<pairs.length; i++){
+			sortedOffsets[i] = (int)(pairs[i] >>> 32);
+			sortedSlots[i] = (int)pairs[i];
+		}
+
+		for(int index: layout.indices){
+			pokemonSet[index >>> 6] |= 1L << index;
+		}
+
+		//slots that start out legendary, they have to change when legendaries are off
+		int count = 0;
+		int[] legendarySlots = new int[slots.size()];
+		for(int i=0; i<slots.size(); i++){
+			if(layout.isLegendaryPokemon(base[slots.getOffset(i)] & 0xFF)){
+				legendarySlots[count++] = i;
+			}
+		}
+		baseLegendarySlots = Arrays.copyOf(legendarySlots, count);
+	}
+
+	/*******************************************/
+	// Verify
+	/*******************************************/
+
+	//checks a randomized ROM made with the given options
+	public Report verify(byte[] rom, RandomizerOptions options){
+		Report report = new Report();
+		if(rom.length != base.length){
+			report.add(Report.UNEXPECTED_CHANGE, "ROM is " + rom.length + " bytes, the base is " + base.length);
+			return report;
+		}
+		boolean[] enabled = getEnabledSections(options);
+
+		//only the bytes that differ are inspected
+		int position = 0;
+		while(position < rom.length){
+			int mismatch = Arrays.mismatch(base, position, base.length, rom, position, rom.length);
+			if(mismatch < 0){
+				break;
+			}
+			int offset = position + mismatch;
+			report.changedBytes++;
+			checkChange(offset, rom, options, enabled, report);
+			position = offset + 1;
+		}
+
+		//the checksums are recomputed from scratch rather than trusting the randomizer's incremental ones
+		if(rom.length > Checksum.globalChecksumOffset + 1){
+			int header = Checksum.computeHeaderChecksum(rom);
+			if(header != Checksum.readHeaderChecksum(rom)){
+				report.add(Report.BAD_CHECKSUM, "Header checksum is " + hex(Checksum.readHeaderChecksum(rom)) + ", should be " + hex(header));
+			}
+			int global = Checksum.computeGlobalChecksum(rom);
+			if(global != Checksum.readGlobalChecksum(rom)){
+				report.add(Report.BAD_CHECKSUM, "Global checksum is " + hex(Checksum.readGlobalChecksum(rom)) + ", should be " + hex(global));
+			}
+		}
+
+		//a legendary slot that didn't change is still a legendary
+		if(options.noLegendaries){
+			for(int slot: baseLegendarySlots){
+				int offset = slots.getOffset(slot);
+				if(enabled[slots.getSection(slot)] && rom[offset] == base[offset]){
+					report.add(Report.LEGENDARY, "Legendary left at " + hex(offset) + " (" + describe(slot) + ")");
+				}
+			}
+		}
+		return report;
+	}
+
+	private void checkChange(int offset, byte[] rom, RandomizerOptions options, boolean[] enabled, Report report){
+		if(Checksum.isChecksumOffset(offset)){
+			//checked in full below
+			return;
+		}
+		int found = Arrays.binarySearch(sortedOffsets, offset);
+		if(found < 0){
+			int old = base[offset] & 0xFF;
+			if(offset >= layout.trainerPokemonStart && offset <= layout.trainerPokemonEnd && (old == 0x00 || old == 0xFF)){
+				report.add(Report.BROKEN_MARKER, "Trainer marker " + hex(old) + " at " + hex(offset) + " became " + hex(rom[offset] & 0xFF));
+			}
+			else{
+				report.add(Report.UNEXPECTED_CHANGE, "Unexpected change at " + hex(offset) + ": " + hex(old) + " -> " + hex(rom[offset] & 0xFF));
+			}
+			return;
+		}
+		int slot = sortedSlots[found];
+		int species = rom[offset] & 0xFF;
+		if(!enabled[slots.getSection(slot)]){
+			report.add(Report.UNEXPECTED_CHANGE, "Slot " + hex(offset) + " (" + describe(slot) + ") changed but its section is off");
+		}
+		if((pokemonSet[species >>> 6] & (1L << species)) == 0){
+			report.add(Report.INVALID_SPECIES, "Slot " + hex(offset) + " (" + describe(slot) + ") holds " + hex(species) + ", not a pokemon");
+		}
+		else if(options.noLegendaries && layout.isLegendaryPokemon(species)){
+			report.add(Report.LEGENDARY, "Legendary " + hex(species) + " at " + hex(offset) + " (" + describe(slot) + ")");
+		}
+	}
+
+	private static boolean[] getEnabledSections(RandomizerOptions options){
+		boolean[] enabled = new boolean[Section.COUNT];
+		enabled[Section.TITLE_SCREEN] = options.titleScreen;
+		enabled[Section.PLAYER_STARTERS] = options.playerStarters;
+		enabled[Section.WILD_AREAS] = options.wildAreas;
+		enabled[Section.TRAINERS] = options.trainers;
+		return enabled;
+	}
+
+	private String describe(int slot){
+		return Section.getName(slots.getSection(slot)) + " " + slots.getGroup(slot);
+	}
+
+	private static String hex(int value){
+		return String.format("0x%02X", value);
+	}
+
+	/*******************************************/
+	// Report
+	/*******************************************/
+
+	//what a verification found, messages are capped at maxMessages but the counts aren't
+	public static class Report {
+		public static final int UNEXPECTED_CHANGE = 0;
+		public static final int INVALID_SPECIES   = 1;
+		public static final int LEGENDARY         = 2;
+		public static final int BROKEN_MARKER     = 3;
+		public static final int BAD_CHECKSUM      = 4;
+		public static final String[] problemNames = {"unexpected changes", "invalid pokemon", "legendaries", "broken trainer markers", "bad checksums"};
+
+		public int changedBytes = 0;
+		public final int[] problems = new int[problemNames.length];
+		public final List<String> messages = new ArrayList<String>();
+
+		void add(int problem, String message){
+			problems[problem]++;
+			if(messages.size() < maxMessages){
+				messages.add(message);
+			}
+		}
+
+		public boolean isOk(){
+			for(int count: problems){
+				if(count > 0){
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public String toString(){
+			StringBuilder builder = new StringBuilder();
+			builder.append(changedBytes).append(" bytes changed");
+			for(int i=0; i<problems.length; i++){
+				if(problems[i] > 0){
+					builder.append(", ").append(problems[i]).append(' ').append(problemNames[i]);
+				}
+			}
+			return builder.toString();
+		}
+	}
+
+	/*******************************************/
+	// Command Line
+	/*******************************************/
+
+	//verifies ROMs (.gb) or patches (.ips) against the base, directories are searched one level deep
+	public static void main(String[] args) throws Exception {
+		RandomizerOptions options = new RandomizerOptions();
+		List<File> files = new ArrayList<File>();
+		String baseFile = null;
+		for(String arg: args){
+			if(arg.startsWith("--")){
+				if(!options.parseFlag(arg)){
+					System.err.println("Unknown option: " + arg);
+					printUsage();
+					return;
+				}
+			}
+			else if(baseFile == null){
+				baseFile = arg;
+			}
+			else{
+				addFiles(new File(arg), files);
+			}
+		}
+		if(baseFile == null || files.isEmpty()){
+			printUsage();
+			return;
+		}
+
+		RedBlueRandomizer layout = new RedBlueRandomizer();
+		layout.readRom(baseFile);
+		final byte[] base = layout.getBaseRom();
+		final RomVerifier verifier = new RomVerifier(layout, base, layout.getSlotIndex());
+		final RandomizerOptions verifyOptions = options;
+
+		long start = System.nanoTime();
+		ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		List<Future<Report>> reports = new ArrayList<Future<Report>>();
+		for(final File file: files){
+			reports.add(pool.submit(new Callable<Report>() {
+				public Report call() throws IOException {
+					return verifier.verify(readVariant(file, base), verifyOptions);
+				}
+			}));
+		}
+		int failed = 0;
+		for(int i=0; i<files.size(); i++){
+			Report report = reports.get(i).get();
+			if(!report.isOk()){
+				failed++;
+				System.out.println(files.get(i) + ": " + report);
+				for(String message: report.messages){
+					System.out.println("  " + message);
+				}
+			}
+		}
+		pool.shutdown();
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.println(String.format("Verified %d files in %.2fs (%.1f/sec), %d failed",
+				files.size(), seconds, files.size() / seconds, failed));
+		if(failed > 0){
+			System.exit(1);
+		}
+	}
+
+	//reads a randomized ROM, or applies a patch to a copy of the base
+	private static byte[] readVariant(File file, byte[] base) throws IOException {
+		if(file.getName().toLowerCase().endsWith(".ips")){
+			InputStream patch = new BufferedInputStream(new FileInputStream(file));
+			try{
+				return IpsPatcher.apply(patch, base.clone());
+			}
+			finally{
+				patch.close();
+			}
+		}
+		return RomFile.read(file);
+	}
+
+	private static void addFiles(File file, List<File> files){
+		if(file.isDirectory()){
+			File[] children = file.listFiles();
+			if(children != null){
+				Arrays.sort(children);
+				for(File child: children){
+					String name = child.getName().toLowerCase();
+					if(child.isFile() && (name.endsWith(".gb") || name.endsWith(".ips"))){
+						files.add(child);
+					}
+				}
+			}
+		}
+		else{
+			files.add(file);
+		}
+	}
+
+	private static void printUsage(){
+		System.err.println("Usage: RomVerifier <base rom> <rom, patch or directory>... [options the ROMs were made with]\n" +
+				RandomizerOptions.getUsage());
+	}
+}